@@ -0,0 +1,68 @@
+package com.johnhollandheb.api.object;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.johnhollandheb.core.domain.ImageEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// entity to dto mapping and json serialization of GET /images responses
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageMappingBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int imageCount;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<ImageEntity> imageEntities;
+    private List<Image> images;
+
+    @Setup
+    public void setUp() {
+        imageEntities = new ArrayList<>(imageCount);
+        for (int i = 0; i < imageCount; i++) {
+            imageEntities.add(ImageEntity.builder()
+                    .id(UUID.randomUUID())
+                    .label("Image " + i)
+                    .fileName("image" + i + ".jpg")
+                    .contentHash("0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef")
+                    .contentLength(1048576L)
+                    .imageType("image/jpeg")
+                    .objectsDetected(true)
+                    .build());
+        }
+        images = toImages();
+        images.forEach(image -> image.setObjects(Arrays.asList("Dog", "Cat", "Person", "Tree", "Car")));
+    }
+
+    @Benchmark
+    public List<Image> fromEntity() {
+        return toImages();
+    }
+
+    @Benchmark
+    public byte[] serializeImages() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(images);
+    }
+
+    private List<Image> toImages() {
+        return imageEntities.stream()
+                .map(Image::fromEntity)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,78 @@
+package com.johnhollandheb.api.service;
+
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.BoundingPoly;
+import com.google.cloud.vision.v1.LocalizedObjectAnnotation;
+import com.google.cloud.vision.v1.NormalizedVertex;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.johnhollandheb.core.domain.DetectedImageObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// parsing a Vision batch response (one response per image in the batch) into detected objects
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectionResponseBenchmark {
+    private static final String[] OBJECT_NAMES = {"Dog", "Cat", "Person", "Car", "Tree", "Bicycle", "Chair"};
+
+    @Param({"1", "16"})
+    int batchSize;
+
+    @Param({"10", "100"})
+    int annotationsPerImage;
+
+    private byte[] responseBytes;
+    private BatchAnnotateImagesResponse response;
+
+    @Setup
+    public void setUp() {
+        BatchAnnotateImagesResponse.Builder batchResponse = BatchAnnotateImagesResponse.newBuilder();
+        for (int i = 0; i < batchSize; i++) {
+            AnnotateImageResponse.Builder imageResponse = AnnotateImageResponse.newBuilder();
+            for (int j = 0; j < annotationsPerImage; j++) {
+                imageResponse.addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder()
+                        .setName(OBJECT_NAMES[j % OBJECT_NAMES.length])
+                        .setScore(0.9f)
+                        .setBoundingPoly(BoundingPoly.newBuilder()
+                                .addNormalizedVertices(NormalizedVertex.newBuilder().setX(0.1f).setY(0.1f))
+                                .addNormalizedVertices(NormalizedVertex.newBuilder().setX(0.5f).setY(0.1f))
+                                .addNormalizedVertices(NormalizedVertex.newBuilder().setX(0.5f).setY(0.5f))
+                                .addNormalizedVertices(NormalizedVertex.newBuilder().setX(0.1f).setY(0.5f))));
+            }
+            batchResponse.addResponses(imageResponse);
+        }
+        response = batchResponse.build();
+        responseBytes = response.toByteArray();
+    }
+
+    @Benchmark
+    public int objectNames() {
+        int objectCount = 0;
+        for (AnnotateImageResponse imageResponse : response.getResponsesList()) {
+            List<DetectedImageObject> objects = ImageObjectionDetectionService.getDetectedImageObjects(imageResponse);
+            objectCount += objects.size();
+        }
+        return objectCount;
+    }
+
+    // includes decoding the protobuf, as the client does for every batch
+    @Benchmark
+    public int parseAndObjectNames() throws InvalidProtocolBufferException {
+        int objectCount = 0;
+        for (AnnotateImageResponse imageResponse : BatchAnnotateImagesResponse.parseFrom(responseBytes).getResponsesList()) {
+            objectCount += ImageObjectionDetectionService.getDetectedImageObjects(imageResponse).size();
+        }
+        return objectCount;
+    }
+}
@@ -0,0 +1,68 @@
+package com.johnhollandheb.api.service;
+
+import com.johnhollandheb.api.object.ImageUploadRequest;
+import com.johnhollandheb.core.content.ContentHash;
+import com.johnhollandheb.core.domain.ImageEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// the per-request work of an inline (base64 data uri) upload before anything reaches the database
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageUploadBenchmark {
+
+    @Param({"10240", "102400", "1048576", "10485760"})
+    int imageBytes;
+
+    private String dataUri;
+
+    @Setup
+    public void setUp() {
+        byte[] image = new byte[imageBytes];
+        new Random(42).nextBytes(image);
+        dataUri = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(image);
+    }
+
+    @Benchmark
+    public ImageEntity toEntity() {
+        return ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(false)
+                .fileName("image.jpg")
+                .base64ImageData(dataUri)
+                .build()
+                .toEntity();
+    }
+
+    // what ImageService.saveImage does with the data uri: a streaming decode, hashed on the way into the store
+    @Benchmark
+    public byte[] decodeAndHashStreaming() throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        try (InputStream decoded = new DigestInputStream(Base64DataUri.openDecodedStream(dataUri), digest)) {
+            decoded.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+    // baseline: the split-then-decode into a byte array that uploads used before streaming
+    @Benchmark
+    public byte[] decodeToArray() {
+        return Base64.getMimeDecoder().decode(dataUri.substring(dataUri.indexOf(',') + 1));
+    }
+}
@@ -0,0 +1,80 @@
+package com.johnhollandheb.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// latencies of one endpoint's requests; only requests started after the warmup are recorded
+class EndpointStats {
+    private final String name;
+    private final Lock lock = new ReentrantLock();
+    private long[] latencyNanos = new long[1024];
+    private int count;
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void record(long nanos, boolean success) {
+        if (!success) {
+            errors.incrementAndGet();
+        }
+        lock.lock();
+        try {
+            if (count == latencyNanos.length) {
+                latencyNanos = Arrays.copyOf(latencyNanos, count * 2);
+            }
+            latencyNanos[count++] = nanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the generator couldn't send the request because maxInFlight requests were already outstanding
+    void drop() {
+        dropped.incrementAndGet();
+    }
+
+    Map<String, Object> toReport(double durationSeconds) {
+        long[] sorted;
+        lock.lock();
+        try {
+            sorted = Arrays.copyOf(latencyNanos, count);
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(sorted);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", sorted.length);
+        report.put("errors", errors.get());
+        report.put("dropped", dropped.get());
+        report.put("throughputPerSecond", round(sorted.length / durationSeconds));
+        report.put("p50Ms", percentileMillis(sorted, 0.50));
+        report.put("p95Ms", percentileMillis(sorted, 0.95));
+        report.put("p99Ms", percentileMillis(sorted, 0.99));
+        report.put("maxMs", percentileMillis(sorted, 1.0));
+        return report;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return round(sorted[Math.max(0, index)] / 1_000_000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.johnhollandheb.loadtest;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesRequest;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.LocalizedObjectAnnotation;
+import com.google.cloud.vision.v1.stub.ImageAnnotatorStub;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Stands in for the Vision API: every batchAnnotateImages call takes the configured latency and answers each
+// image with a couple of canned object annotations. Only the batch call used by BatchingImageAnnotator is
+// implemented.
+class FakeImageAnnotatorStub extends ImageAnnotatorStub {
+    static final List<String> OBJECT_NAMES = List.of("Dog", "Cat", "Person", "Car", "Tree", "Bicycle", "Chair");
+
+    private final long latencyMillis;
+    private volatile boolean shutdown;
+
+    FakeImageAnnotatorStub(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public UnaryCallable<BatchAnnotateImagesRequest, BatchAnnotateImagesResponse> batchAnnotateImagesCallable() {
+        return new UnaryCallable<>() {
+            @Override
+            public ApiFuture<BatchAnnotateImagesResponse> futureCall(BatchAnnotateImagesRequest request,
+                                                                     ApiCallContext context) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(latencyMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return ApiFutures.immediateFailedFuture(ex);
+                }
+                BatchAnnotateImagesResponse.Builder response = BatchAnnotateImagesResponse.newBuilder();
+                for (int i = 0; i < request.getRequestsCount(); i++) {
+                    response.addResponses(cannedResponse());
+                }
+                return ApiFutures.immediateFuture(response.build());
+            }
+        };
+    }
+
+    private AnnotateImageResponse cannedResponse() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        AnnotateImageResponse.Builder response = AnnotateImageResponse.newBuilder();
+        for (int i = 0; i < 2; i++) {
+            response.addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder()
+                    .setName(OBJECT_NAMES.get(random.nextInt(OBJECT_NAMES.size())))
+                    .setScore(0.5f + random.nextFloat() / 2));
+        }
+        return response.build();
+    }
+
+    @Override
+    public void close() {
+        shutdown = true;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown;
+    }
+
+    @Override
+    public void shutdownNow() {
+        shutdown = true;
+    }
+
+    @Override
+    public boolean awaitTermination(long duration, TimeUnit unit) {
+        return true;
+    }
+}
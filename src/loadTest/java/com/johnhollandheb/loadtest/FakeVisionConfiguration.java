@@ -0,0 +1,17 @@
+package com.johnhollandheb.loadtest;
+
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+public class FakeVisionConfiguration {
+
+    @Bean
+    @Primary
+    public ImageAnnotatorClient imageAnnotatorClient(@Value("${load.vision-latency-ms:200}") long latencyMillis) {
+        return ImageAnnotatorClient.create(new FakeImageAnnotatorStub(latencyMillis));
+    }
+}
@@ -0,0 +1,144 @@
+package com.johnhollandheb.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Sends a fixed-rate (open model) mix of uploads, listings and object searches, so a slow server shows up as
+// rising latency and dropped requests rather than as a quietly lower request rate.
+class LoadGenerator {
+    private static final int DISTINCT_IMAGES = 64;
+
+    private final URI baseUri;
+    private final LoadTestSettings settings;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Semaphore inFlight;
+    private final List<String> uploadBodies = new ArrayList<>();
+    private volatile boolean recording;
+
+    LoadGenerator(URI baseUri, LoadTestSettings settings) {
+        this.baseUri = baseUri;
+        this.settings = settings;
+        this.inFlight = new Semaphore(settings.maxInFlight);
+    }
+
+    Map<String, Object> run() throws Exception {
+        createUploadBodies();
+        EndpointStats uploads = new EndpointStats("POST /images");
+        EndpointStats lists = new EndpointStats("GET /images?limit=50");
+        EndpointStats searches = new EndpointStats("GET /images?objects=");
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3);
+        schedule(scheduler, settings.uploadsPerSecond, uploads, this::uploadRequest);
+        schedule(scheduler, settings.listsPerSecond, lists, () -> get("/images?limit=50"));
+        schedule(scheduler, settings.searchesPerSecond, searches, () -> get("/images?limit=50&objects="
+                + FakeImageAnnotatorStub.OBJECT_NAMES.get(
+                        ThreadLocalRandom.current().nextInt(FakeImageAnnotatorStub.OBJECT_NAMES.size()))));
+
+        TimeUnit.SECONDS.sleep(settings.warmupSeconds);
+        recording = true;
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(settings.durationSeconds);
+        scheduler.shutdownNow();
+        // let outstanding requests finish so they're counted
+        inFlight.tryAcquire(settings.maxInFlight, 60, TimeUnit.SECONDS);
+        double durationSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (EndpointStats stats : List.of(uploads, lists, searches)) {
+            endpoints.put(stats.getName(), stats.toReport(durationSeconds));
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("durationSeconds", Math.round(durationSeconds));
+        report.put("settings", settings.toReport());
+        report.put("endpoints", endpoints);
+        return report;
+    }
+
+    private void schedule(ScheduledExecutorService scheduler, double perSecond, EndpointStats stats,
+                          Supplier<HttpRequest> request) {
+        if (perSecond <= 0) {
+            return;
+        }
+        long periodNanos = (long) (1_000_000_000L / perSecond);
+        scheduler.scheduleAtFixedRate(() -> send(stats, request.get()), 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void send(EndpointStats stats, HttpRequest request) {
+        if (!inFlight.tryAcquire()) {
+            if (recording) {
+                stats.drop();
+            }
+            return;
+        }
+        boolean recorded = recording;
+        long start = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, ex) -> {
+                    inFlight.release();
+                    if (recorded) {
+                        stats.record(System.nanoTime() - start, ex == null && response.statusCode() < 400);
+                    }
+                });
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).GET().build();
+    }
+
+    private HttpRequest uploadRequest() {
+        String body = uploadBodies.get(ThreadLocalRandom.current().nextInt(uploadBodies.size()));
+        return HttpRequest.newBuilder(baseUri.resolve("/images?async=" + settings.asyncDetection))
+                .header("Content-Type", "application/json")
+                .header("User-Agent", "load-test")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    // a pool of distinct noise images, so most uploads are new content rather than detection cache hits
+    private void createUploadBodies() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < DISTINCT_IMAGES; i++) {
+            BufferedImage image = new BufferedImage(settings.imageDimension, settings.imageDimension,
+                    BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, random.nextInt());
+                }
+            }
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", png);
+            Map<String, Object> upload = new LinkedHashMap<>();
+            upload.put("isLink", false);
+            upload.put("detectObjects", true);
+            upload.put("fileName", "load-" + i + ".png");
+            upload.put("base64ImageData", "data:image/png;base64," + Base64.getEncoder().encodeToString(png.toByteArray()));
+            try {
+                uploadBodies.add(objectMapper.writeValueAsString(upload));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
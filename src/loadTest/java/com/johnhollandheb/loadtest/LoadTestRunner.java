@@ -0,0 +1,69 @@
+package com.johnhollandheb.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.johnhollandheb.JohnhollandhebApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Boots the service against an embedded Postgres with a fake Vision client (fixed latency, canned objects),
+// drives it with LoadGenerator and writes a json report of latency percentiles per endpoint. Run it with
+// ./gradlew loadTest; no Google Cloud account or external database is needed. With several load.threadModes
+// the run is repeated per mode and the report has one entry per mode.
+public class LoadTestRunner {
+    private static final String PLATFORM_THREADS = "platform";
+    private static final String VIRTUAL_THREADS = "virtual";
+
+    public static void main(String[] args) throws Exception {
+        File reportFile = new File(args.length > 0 ? args[0] : "build/reports/load-test/report.json");
+        LoadTestSettings settings = new LoadTestSettings();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        Map<String, Object> reportsByThreadMode = new LinkedHashMap<>();
+        for (String threadMode : settings.threadModes) {
+            if (!PLATFORM_THREADS.equals(threadMode) && !VIRTUAL_THREADS.equals(threadMode)) {
+                throw new IllegalArgumentException("load.threadModes must be platform and/or virtual: " + threadMode);
+            }
+            System.out.println("Running the load test on " + threadMode + " threads");
+            reportsByThreadMode.put(threadMode, run(settings, VIRTUAL_THREADS.equals(threadMode)));
+        }
+
+        reportFile.getParentFile().mkdirs();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, reportsByThreadMode);
+        for (Map.Entry<String, Object> report : reportsByThreadMode.entrySet()) {
+            System.out.println(report.getKey() + " threads: " + objectMapper.writerWithDefaultPrettyPrinter()
+                    .writeValueAsString(((Map<?, ?>) report.getValue()).get("endpoints")));
+        }
+        System.out.println("Load test report written to " + reportFile.getAbsolutePath());
+    }
+
+    // a fresh database per run, so a later run doesn't list (and search) the images uploaded by an earlier one
+    private static Map<String, Object> run(LoadTestSettings settings, boolean virtualThreads) throws Exception {
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.start()) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                    JohnhollandhebApplication.class, FakeVisionConfiguration.class)
+                    .properties(
+                            "spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                            "spring.datasource.username=postgres",
+                            "spring.datasource.password=postgres",
+                            "server.port=0",
+                            "spring.cloud.gcp.core.enabled=false",
+                            "spring.cloud.gcp.vision.enabled=false",
+                            "threads.virtual.enabled=" + virtualThreads,
+                            "load.vision-latency-ms=" + settings.visionLatencyMillis)
+                    .run();
+            try {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                return new LoadGenerator(URI.create("http://localhost:" + port), settings).run();
+            } finally {
+                context.close();
+            }
+        }
+    }
+}
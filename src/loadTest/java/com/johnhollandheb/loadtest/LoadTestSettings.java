@@ -0,0 +1,42 @@
+package com.johnhollandheb.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// load test knobs, read from -Dload.* system properties (the gradle loadTest task passes them through)
+class LoadTestSettings {
+    final int durationSeconds = Integer.getInteger("load.durationSeconds", 60);
+    final int warmupSeconds = Integer.getInteger("load.warmupSeconds", 10);
+    final double uploadsPerSecond = getDouble("load.uploadsPerSecond", 5);
+    final double listsPerSecond = getDouble("load.listsPerSecond", 20);
+    final double searchesPerSecond = getDouble("load.searchesPerSecond", 20);
+    // open model: requests are sent on schedule regardless of responses, up to this many outstanding
+    final int maxInFlight = Integer.getInteger("load.maxInFlight", 256);
+    final long visionLatencyMillis = Long.getLong("load.visionLatencyMs", 200);
+    final int imageDimension = Integer.getInteger("load.imageDimension", 640);
+    final boolean asyncDetection = Boolean.parseBoolean(System.getProperty("load.asyncDetection", "false"));
+    // the service is started once per mode (against a fresh database) to compare platform and virtual threads
+    final List<String> threadModes = Arrays.asList(System.getProperty("load.threadModes", "platform").split(","));
+
+    Map<String, Object> toReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("durationSeconds", durationSeconds);
+        report.put("warmupSeconds", warmupSeconds);
+        report.put("uploadsPerSecond", uploadsPerSecond);
+        report.put("listsPerSecond", listsPerSecond);
+        report.put("searchesPerSecond", searchesPerSecond);
+        report.put("maxInFlight", maxInFlight);
+        report.put("visionLatencyMs", visionLatencyMillis);
+        report.put("imageDimension", imageDimension);
+        report.put("asyncDetection", asyncDetection);
+        report.put("threadModes", threadModes);
+        return report;
+    }
+
+    private static double getDouble(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return (value != null) ? Double.parseDouble(value) : defaultValue;
+    }
+}
@@ -0,0 +1,10 @@
+package com.johnhollandheb.api.object;
+
+public enum DetectionStatus {
+    NOT_REQUESTED,
+    PENDING,
+    DONE,
+    FAILED,
+    // turned away because detection was at capacity; POST /images/{imageId}/detection to retry
+    REJECTED
+}
@@ -1,18 +1,25 @@
 package com.johnhollandheb.api.object;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.johnhollandheb.core.domain.ImageEntity;
+import com.johnhollandheb.core.domain.ImageSummary;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class Image {
+    // thumbnails are downscaled to fit these sizes (in pixels), see GET /images/{imageId}/thumbnail
+    public static final List<Integer> THUMBNAIL_SIZES = List.of(128, 512);
+
     private String imageId;
     private String label;
     private String fileName;
@@ -20,6 +27,13 @@ public class Image {
     private String imageUrl;
     private boolean objectsDetected;
     private List<String> objects;
+    private Map<Integer, String> thumbnailUrls;
+    // best detection score of the requested objects, only set on ranked (minScore/minBoxArea) results
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Float score;
+    // perceptual hash distance to the queried image, only set on GET /images/{imageId}/similar results
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer distance;
 
     public static Image fromEntity(ImageEntity imageEntity) {
         return Image.builder()
@@ -29,6 +43,27 @@ public class Image {
                 .imageType(imageEntity.getImageType())
                 .imageUrl(imageEntity.getImageUrl())
                 .objectsDetected(imageEntity.getObjectsDetected())
+                .thumbnailUrls(getThumbnailUrls(imageEntity.getId().toString()))
                 .build();
     }
+
+    public static Image fromSummary(ImageSummary imageSummary) {
+        return Image.builder()
+                .imageId(imageSummary.getId().toString())
+                .label(imageSummary.getLabel())
+                .fileName(imageSummary.getFileName())
+                .imageType(imageSummary.getImageType())
+                .imageUrl(imageSummary.getImageUrl())
+                .objectsDetected(imageSummary.getObjectsDetected())
+                .thumbnailUrls(getThumbnailUrls(imageSummary.getId().toString()))
+                .build();
+    }
+
+    private static Map<Integer, String> getThumbnailUrls(String imageId) {
+        Map<Integer, String> thumbnailUrls = new LinkedHashMap<>();
+        for (Integer size : THUMBNAIL_SIZES) {
+            thumbnailUrls.put(size, "/images/" + imageId + "/thumbnail?size=" + size);
+        }
+        return thumbnailUrls;
+    }
 }
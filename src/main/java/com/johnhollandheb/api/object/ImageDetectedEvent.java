@@ -0,0 +1,18 @@
+package com.johnhollandheb.api.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// data of the "detected" event on GET /images/events
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageDetectedEvent {
+    private String imageId;
+    private List<String> objects;
+}
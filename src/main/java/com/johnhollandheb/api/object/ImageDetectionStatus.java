@@ -0,0 +1,19 @@
+package com.johnhollandheb.api.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageDetectionStatus {
+    private String imageId;
+    private DetectionStatus status;
+    private List<String> objects;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package com.johnhollandheb.api.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// one line of the bulk import response; index is the 0-based position of the item in the ndjson or zip input
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageImportResult {
+    private int index;
+    private String fileName;
+    private ImageImportStatus status;
+    private Image image;
+    private String error;
+}
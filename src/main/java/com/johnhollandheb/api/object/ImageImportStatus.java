@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.object;
+
+public enum ImageImportStatus {
+    // the image was saved (and its objects detected, if requested)
+    IMPORTED,
+    // the image was saved but object detection failed; it can be retried with POST /images/{imageId}/detection
+    DETECTION_FAILED,
+    FAILED
+}
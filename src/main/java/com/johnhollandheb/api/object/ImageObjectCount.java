@@ -0,0 +1,16 @@
+package com.johnhollandheb.api.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageObjectCount {
+    private String objectName;
+    // number of images the object was detected in
+    private int imageCount;
+}
@@ -0,0 +1,18 @@
+package com.johnhollandheb.api.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImagePage {
+    private List<Image> images;
+    // opaque continuation token, null when there are no further pages
+    private String nextCursor;
+}
@@ -8,12 +8,6 @@ import lombok.NoArgsConstructor;
 import org.springframework.util.StringUtils;
 
 import javax.validation.constraints.NotNull;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
-import java.util.Base64;
 import java.util.UUID;
 
 @Data
@@ -32,16 +26,10 @@ public class ImageUploadRequest {
     private String linkUrl;
     private String imageType;
 
-    public ImageEntity toEntity(String userAgent) throws IOException {
-        if (this.getIsLink()) {
-            this.setImageType(getFileType());
-            this.setBase64ImageData(getBase64StringForLinkedImage(getUserAgent(userAgent)));
-        }
-
+    public ImageEntity toEntity() {
         return ImageEntity.builder()
                 .id(UUID.randomUUID())
                 .label(getLabel(this))
-                .base64imageData(this.getBase64ImageData())
                 .fileName(this.getFileName())
                 .imageUrl(this.getLinkUrl())
                 .imageType(getFileType())
@@ -70,24 +58,4 @@ public class ImageUploadRequest {
         }
         return "image/" + getFileExtension();
     }
-
-    private String getBase64StringForLinkedImage(String userAgent) throws IOException {
-        URL imageUrl = new URL(this.getLinkUrl());
-        URLConnection urlConnection = imageUrl.openConnection();
-        urlConnection.addRequestProperty("User-Agent", getUserAgent(userAgent));
-        InputStream inputStream = urlConnection.getInputStream();
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int read;
-        while ((read = inputStream.read(buffer, 0, buffer.length)) != -1) {
-            outputStream.write(buffer, 0, read);
-        }
-        return "data:" + this.getImageType() + ";base64,"
-                + Base64.getEncoder().encodeToString(outputStream.toByteArray());
-    }
-
-    private String getUserAgent(String userAgent) {
-        final String DEFAULT_USER_AGENT = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/100.0.4896.127 Safari/537.36";
-        return (StringUtils.hasText(userAgent)) ? userAgent : DEFAULT_USER_AGENT;
-    }
 }
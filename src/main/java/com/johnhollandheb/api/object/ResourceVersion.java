@@ -0,0 +1,18 @@
+package com.johnhollandheb.api.object;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// http validators of a resource: a strong (quoted) entity tag and, when known, its last modification time
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ResourceVersion {
+    private String etag;
+    private Instant lastModified;
+}
@@ -1,18 +1,36 @@
 package com.johnhollandheb.api.resource;
 
 import com.johnhollandheb.api.object.Image;
+import com.johnhollandheb.api.object.ImageDetectionStatus;
+import com.johnhollandheb.api.object.ImageObjectCount;
+import com.johnhollandheb.api.object.ImagePage;
 import com.johnhollandheb.api.object.ImageUploadRequest;
+import com.johnhollandheb.api.object.ResourceVersion;
 import com.johnhollandheb.api.resource.exception.GenericInternalServerException;
+import com.johnhollandheb.api.service.exception.DetectionRejectedException;
 import com.johnhollandheb.api.service.exception.GetImagesException;
-import com.johnhollandheb.api.service.exception.ImageFileSaveException;
 import com.johnhollandheb.api.service.exception.ImageNotFoundException;
+import com.johnhollandheb.api.service.ImageEventService;
+import com.johnhollandheb.api.service.ImageImportService;
 import com.johnhollandheb.api.service.ImageService;
 import com.johnhollandheb.api.service.exception.ImageSaveException;
+import com.johnhollandheb.api.service.exception.ImageTooLargeException;
+import com.johnhollandheb.api.service.exception.InvalidImageQueryException;
 import com.johnhollandheb.api.service.exception.InvalidImageUploadRequestException;
+import com.johnhollandheb.api.service.exception.InvalidPageRequestException;
+import com.johnhollandheb.api.service.exception.InvalidThumbnailSizeException;
+import com.johnhollandheb.api.service.exception.LinkedImageUnavailableException;
 import com.johnhollandheb.api.service.exception.ObjectDetectionException;
+import com.johnhollandheb.api.service.exception.ThumbnailUnavailableException;
+import com.johnhollandheb.api.service.exception.TooManySubscribersException;
+import com.johnhollandheb.core.content.ImageContent;
+import com.johnhollandheb.core.index.ObjectMatchMode;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,45 +39,204 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Component
 @Consumes(MediaType.APPLICATION_JSON)
 @Produces(MediaType.APPLICATION_JSON)
 @Slf4j
 @RestController
-@CrossOrigin(origins = "http://localhost:4200") // hack for testing resource from angular SPA
+@CrossOrigin(origins = "http://localhost:4200", exposedHeaders = {"X-Next-Cursor", "Location", "ETag", "Last-Modified"}) // hack for testing resource from angular SPA
 public class ImageResource {
     private static final String IMAGES_RESOURCE_PATH = "/images";
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final String ZIP_MEDIA_TYPE = "application/zip";
+    // the content (and thumbnails) of an image never change, so they can be cached for as long as clients like
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
 
     @Autowired
     ImageService imageService;
 
+    @Autowired
+    ImageImportService imageImportService;
+
+    @Autowired
+    ImageEventService imageEventService;
+
+    // paging is opt-in: passing a limit and/or cursor returns a single page, with the continuation token for
+    // the next page (if any) in the X-Next-Cursor response header. match=all|any (default any) and exclude only
+    // apply together with objects. If-None-Match/If-Modified-Since are checked against the listing's version
+    // before anything is queried, so an unchanged poll is answered with a 304. Passing minScore and/or
+    // minBoxArea with objects returns the top limit images ranked by detection score instead, which is a single
+    // page matching any of the objects (no match=all, exclude or cursor).
     @GetMapping(IMAGES_RESOURCE_PATH)
-    public List<Image> getImages(@RequestParam() Optional<List<String>> objects) {
+    public ResponseEntity<List<Image>> getImages(@RequestParam() Optional<List<String>> objects,
+                                                 @RequestParam() Optional<String> match,
+                                                 @RequestParam() Optional<List<String>> exclude,
+                                                 @RequestParam() Optional<Integer> limit,
+                                                 @RequestParam() Optional<String> cursor,
+                                                 @RequestParam() Optional<Float> minScore,
+                                                 @RequestParam() Optional<Float> minBoxArea,
+                                                 WebRequest webRequest) {
         try {
-            if (objects.isPresent()) {
-                return imageService.getImagesByObjectList(objects.get());
+            boolean ranked = minScore.isPresent() || minBoxArea.isPresent();
+            if (ranked && (objects.isEmpty() || getObjectMatchMode(match) != ObjectMatchMode.ANY
+                    || exclude.isPresent() || cursor.isPresent())) {
+                throw new InvalidImageQueryException(
+                        "minScore and minBoxArea require objects and can't be combined with match=all, exclude or cursor");
+            }
+            if (checkNotModified(webRequest, imageService.getImageListingVersion())) {
+                return null;
+            }
+
+            ImagePage imagePage;
+            if (ranked) {
+                imagePage = imageService.getTopImagesByObjectList(objects.get(), minScore.orElse(null),
+                        minBoxArea.orElse(null), limit.orElse(null));
+            } else if (objects.isPresent()) {
+                imagePage = imageService.getImagesByObjectList(objects.get(), getObjectMatchMode(match),
+                        exclude.orElse(Collections.emptyList()), cursor.orElse(null), limit.orElse(null));
             } else {
-                return imageService.getAllImages();
+                imagePage = imageService.getImages(cursor.orElse(null), limit.orElse(null));
+            }
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache());
+            if (imagePage.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, imagePage.getNextCursor());
+            }
+            return response.body(imagePage.getImages());
+        } catch (InvalidPageRequestException | InvalidImageQueryException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        } catch (GetImagesException ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), ex);
+        }
+    }
+
+    // every detected object name with its image count, most frequent first; prefix filters names (case
+    // insensitive) and limit keeps the top N. The counts only change with the images, so they share the
+    // listing's validators.
+    @GetMapping(IMAGES_RESOURCE_PATH + "/objects")
+    public ResponseEntity<List<ImageObjectCount>> getImageObjectCounts(@RequestParam() Optional<String> prefix,
+                                                                       @RequestParam() Optional<Integer> limit,
+                                                                       WebRequest webRequest) {
+        try {
+            if (checkNotModified(webRequest, imageService.getImageListingVersion())) {
+                return null;
             }
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache())
+                    .body(imageService.getImageObjectCounts(prefix.orElse(null), limit.orElse(null)));
+        } catch (InvalidPageRequestException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
         } catch (GetImagesException ex) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), ex);
         }
     }
 
+    // server-sent events instead of polling GET /images/{imageId}: a "detected" event, with data
+    // {"imageId": ..., "objects": [...]}, when an image's objects are detected, for every image or only the given
+    // imageIds. Idle streams get a heartbeat comment; a client that falls behind is disconnected and should
+    // reconnect (EventSource does) and re-check the images it's waiting for.
+    @GetMapping(value = IMAGES_RESOURCE_PATH + "/events", produces = MediaType.SERVER_SENT_EVENTS)
+    public SseEmitter getImageEvents(@RequestParam() Optional<List<String>> imageIds) {
+        try {
+            return imageEventService.subscribe(imageIds.orElse(Collections.emptyList()).stream()
+                    .map(UUID::fromString)
+                    .collect(Collectors.toSet()));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "imageIds must be image ids", ex);
+        } catch (TooManySubscribersException ex) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), ex);
+        }
+    }
+
+    // bulk import of ndjson upload requests (one per line) or a zip of image files; the response streams one
+    // ndjson ImageImportResult line per item, in input order, as the import progresses
+    @PostMapping(value = IMAGES_RESOURCE_PATH + "/import", consumes = NDJSON_MEDIA_TYPE, produces = NDJSON_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> importImages(
+            @RequestHeader(value = "User-Agent", required = false) String userAgent,
+            HttpServletRequest httpRequest) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, NDJSON_MEDIA_TYPE)
+                .body(outputStream ->
+                        imageImportService.importNdjson(httpRequest.getInputStream(), userAgent, outputStream));
+    }
+
+    @PostMapping(value = IMAGES_RESOURCE_PATH + "/import", consumes = ZIP_MEDIA_TYPE, produces = NDJSON_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> importImageFiles(
+            @RequestParam(defaultValue = "false") boolean detectObjects,
+            HttpServletRequest httpRequest) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, NDJSON_MEDIA_TYPE)
+                .body(outputStream ->
+                        imageImportService.importZip(httpRequest.getInputStream(), detectObjects, outputStream));
+    }
+
     @GetMapping(IMAGES_RESOURCE_PATH + "/{imageId}")
-    public Image getImage(@PathVariable("imageId") String imageId) {
+    public ResponseEntity<Image> getImage(@PathVariable("imageId") String imageId, WebRequest webRequest) {
+        try {
+            if (checkNotModified(webRequest, imageService.getImageVersion(imageId))) {
+                return null;
+            }
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache())
+                    .body(imageService.getImage(imageId));
+        } catch (ImageNotFoundException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        } catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), new GenericInternalServerException(ex));
+        }
+    }
+
+    // images that look like this one (near-duplicates, re-encodings, resized copies), nearest first: their
+    // perceptual hashes differ in at most maxDistance of 64 bits. Results only change as images are added, so
+    // they share the listing's validators.
+    @GetMapping(IMAGES_RESOURCE_PATH + "/{imageId}/similar")
+    public ResponseEntity<List<Image>> getSimilarImages(@PathVariable("imageId") String imageId,
+                                                        @RequestParam() Optional<Integer> maxDistance,
+                                                        @RequestParam() Optional<Integer> limit,
+                                                        WebRequest webRequest) {
         try {
-            return imageService.getImage(imageId);
+            if (checkNotModified(webRequest, imageService.getImageListingVersion())) {
+                return null;
+            }
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache())
+                    .body(imageService.getSimilarImages(imageId, maxDistance.orElse(null), limit.orElse(null)));
+        } catch (ImageNotFoundException | InvalidImageQueryException | InvalidPageRequestException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        } catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), new GenericInternalServerException(ex));
+        }
+    }
+
+    @GetMapping(IMAGES_RESOURCE_PATH + "/{imageId}/content")
+    public ResponseEntity<StreamingResponseBody> getImageContent(@PathVariable("imageId") String imageId,
+                                                                 WebRequest webRequest) {
+        try {
+            return toContentResponse(imageService.getImageContent(imageId), webRequest);
         } catch (ImageNotFoundException ex) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
         } catch (Exception ex) {
@@ -67,17 +244,164 @@ public class ImageResource {
         }
     }
 
-    @PostMapping(IMAGES_RESOURCE_PATH)
+    // a JPEG downscaled to fit within size x size pixels, see Image.THUMBNAIL_SIZES
+    @GetMapping(IMAGES_RESOURCE_PATH + "/{imageId}/thumbnail")
+    public ResponseEntity<StreamingResponseBody> getThumbnail(@PathVariable("imageId") String imageId,
+                                                              @RequestParam() int size,
+                                                              WebRequest webRequest) {
+        try {
+            return toContentResponse(imageService.getThumbnailContent(imageId, size), webRequest);
+        } catch (ImageNotFoundException | InvalidThumbnailSizeException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        } catch (ThumbnailUnavailableException ex) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, ex.getMessage(), ex);
+        } catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), new GenericInternalServerException(ex));
+        }
+    }
+
+    // with async=true the image is saved, detection is queued and 202 Accepted is returned with the detection
+    // status resource in the Location header. The same 202 is returned when detection was rejected at capacity
+    // (its status is then REJECTED), so the client retries POST /images/{imageId}/detection, not the upload.
+    @PostMapping(value = IMAGES_RESOURCE_PATH, consumes = MediaType.APPLICATION_JSON)
     @Valid
-    public Image saveImage(@RequestHeader("User-Agent") String userAgent, @RequestBody ImageUploadRequest request) {
+    public ResponseEntity<Image> saveImage(@RequestHeader("User-Agent") String userAgent,
+                                           @RequestBody ImageUploadRequest request,
+                                           @RequestParam(defaultValue = "false") boolean async) {
+        return toSaveImageResponse(() -> imageService.saveImage(request, userAgent, async),
+                Boolean.TRUE.equals(request.getDetectObjects()));
+    }
+
+    // raw image upload as a multipart "file" part, without base64 encoding. The container has already spooled
+    // the part to a temp file by the time this runs; the octet-stream upload below avoids that copy.
+    @PostMapping(value = IMAGES_RESOURCE_PATH, consumes = MediaType.MULTIPART_FORM_DATA)
+    public ResponseEntity<Image> saveImageFile(@RequestPart("file") MultipartFile file,
+                                               @RequestParam() Optional<String> fileName,
+                                               @RequestParam() Optional<String> label,
+                                               @RequestParam(defaultValue = "false") boolean detectObjects,
+                                               @RequestParam(defaultValue = "false") boolean async) {
+        ImageUploadRequest request = ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(detectObjects)
+                .fileName(fileName.orElse(file.getOriginalFilename()))
+                .label(label.orElse(null))
+                .imageType(file.getContentType())
+                .build();
+        return toSaveImageResponse(() -> {
+            try (InputStream imageContent = file.getInputStream()) {
+                return imageService.saveImage(request, imageContent, async);
+            } catch (IOException ex) {
+                throw new ImageSaveException(ex);
+            }
+        }, detectObjects);
+    }
+
+    // raw image upload as the request body, streamed to the content store without base64 encoding
+    @PostMapping(value = IMAGES_RESOURCE_PATH, consumes = MediaType.APPLICATION_OCTET_STREAM)
+    public ResponseEntity<Image> saveImageBody(HttpServletRequest httpRequest,
+                                               @RequestParam() String fileName,
+                                               @RequestParam() Optional<String> label,
+                                               @RequestParam() Optional<String> imageType,
+                                               @RequestParam(defaultValue = "false") boolean detectObjects,
+                                               @RequestParam(defaultValue = "false") boolean async) {
+        ImageUploadRequest request = ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(detectObjects)
+                .fileName(fileName)
+                .label(label.orElse(null))
+                .imageType(imageType.orElse(null))
+                .build();
+        return toSaveImageResponse(() -> {
+            try {
+                return imageService.saveImage(request, httpRequest.getInputStream(), async);
+            } catch (IOException ex) {
+                throw new ImageSaveException(ex);
+            }
+        }, detectObjects);
+    }
+
+    @GetMapping(IMAGES_RESOURCE_PATH + "/{imageId}/detection")
+    public ImageDetectionStatus getDetectionStatus(@PathVariable("imageId") String imageId) {
+        try {
+            return imageService.getDetectionStatus(imageId);
+        } catch (ImageNotFoundException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        } catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), new GenericInternalServerException(ex));
+        }
+    }
+
+    // (re)queues detection, e.g. after a failed or rejected attempt
+    @PostMapping(IMAGES_RESOURCE_PATH + "/{imageId}/detection")
+    public ResponseEntity<ImageDetectionStatus> requestDetection(@PathVariable("imageId") String imageId) {
         try {
-            return imageService.saveImage(request, userAgent);
+            return ResponseEntity.accepted()
+                    .location(URI.create(getDetectionPath(imageId)))
+                    .body(imageService.requestDetection(imageId));
+        } catch (ImageNotFoundException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        } catch (DetectionRejectedException ex) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), ex);
+        } catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), new GenericInternalServerException(ex));
+        }
+    }
+
+    // content is addressed by its hash, which makes it the entity tag
+    private ResponseEntity<StreamingResponseBody> toContentResponse(ImageContent imageContent,
+                                                                    WebRequest webRequest) {
+        if (webRequest.checkNotModified("\"" + imageContent.getContentHash() + "\"")) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, imageContent.getContentType())
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+        if (imageContent.getContentLength() != null) {
+            response.contentLength(imageContent.getContentLength());
+        }
+        return response.body(outputStream -> imageService.transferImageContent(imageContent, outputStream));
+    }
+
+    // detection that was requested but hasn't completed is pending (async) or was rejected at capacity
+    private ResponseEntity<Image> toSaveImageResponse(Supplier<Image> saveImage, boolean detectObjects) {
+        try {
+            Image savedImage = saveImage.get();
+            if (detectObjects && !savedImage.isObjectsDetected()) {
+                return ResponseEntity.accepted()
+                        .location(URI.create(getDetectionPath(savedImage.getImageId())))
+                        .body(savedImage);
+            }
+            return ResponseEntity.ok(savedImage);
         } catch (InvalidImageUploadRequestException ex) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
-        } catch (ImageSaveException | ImageFileSaveException | ObjectDetectionException ex) {
+        } catch (ImageTooLargeException ex) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, ex.getMessage(), ex);
+        } catch (LinkedImageUnavailableException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, ex.getMessage(), ex);
+        } catch (ImageSaveException | ObjectDetectionException ex) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), ex);
         } catch (Exception ex) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), new GenericInternalServerException(ex));
         }
     }
+
+    // sets the validators on the response; when they match the request's the response becomes a bodiless 304
+    // and the handler returns null
+    private boolean checkNotModified(WebRequest webRequest, ResourceVersion resourceVersion) {
+        long lastModified = (resourceVersion.getLastModified() != null) ?
+                resourceVersion.getLastModified().toEpochMilli() : -1;
+        return webRequest.checkNotModified(resourceVersion.getEtag(), lastModified);
+    }
+
+    private String getDetectionPath(String imageId) {
+        return IMAGES_RESOURCE_PATH + "/" + imageId + "/detection";
+    }
+
+    private ObjectMatchMode getObjectMatchMode(Optional<String> match) {
+        try {
+            return match.map(ObjectMatchMode::fromParameter).orElse(ObjectMatchMode.ANY);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "match must be one of: all, any", ex);
+        }
+    }
 }
@@ -0,0 +1,45 @@
+package com.johnhollandheb.api.service;
+
+import java.io.InputStream;
+import java.util.Base64;
+
+// Decodes the payload of a base64 data uri (e.g. data:image/png;base64,<encoded image>) as a stream, so the
+// decoded image never has to exist as a second full copy in memory alongside the encoded string.
+public final class Base64DataUri {
+
+    private Base64DataUri() {
+    }
+
+    // the mime decoder ignores line breaks and other characters outside the base64 alphabet
+    public static InputStream openDecodedStream(String dataUri) {
+        return Base64.getMimeDecoder().wrap(new AsciiInputStream(dataUri, dataUri.indexOf(',') + 1));
+    }
+
+    // reads a string of ascii characters as bytes without copying it
+    private static class AsciiInputStream extends InputStream {
+        private final String value;
+        private int position;
+
+        AsciiInputStream(String value, int start) {
+            this.value = value;
+            this.position = start;
+        }
+
+        @Override
+        public int read() {
+            return (position < value.length()) ? (value.charAt(position++) & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= value.length()) {
+                return -1;
+            }
+            int read = Math.min(length, value.length() - position);
+            for (int i = 0; i < read; i++) {
+                buffer[offset + i] = (byte) value.charAt(position++);
+            }
+            return read;
+        }
+    }
+}
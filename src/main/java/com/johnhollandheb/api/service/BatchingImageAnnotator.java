@@ -0,0 +1,156 @@
+package com.johnhollandheb.api.service;
+
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.johnhollandheb.api.service.exception.VisionAnnotationException;
+import com.johnhollandheb.api.service.exception.VisionCapacityExceededException;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Collects concurrent annotate requests into a single batchAnnotateImages call. A batch is sent once it holds
+// vision.batch.max-size requests (the API accepts at most 16) or vision.batch.linger-ms after its first request
+// arrived, whichever comes first. Responses are matched back to callers by index and an error on one image only
+// fails that image's future.
+//
+// At most vision.max-in-flight batches are sent at once. When they are all in use a new batch waits up to
+// vision.max-in-flight-wait-ms for a permit and otherwise fails with VisionCapacityExceededException, so callers
+// get a clear answer instead of queueing behind a slow or unavailable API.
+@Component
+@Slf4j
+public class BatchingImageAnnotator {
+    private static final int MAX_API_BATCH_SIZE = 16;
+
+    private final BlockingQueue<PendingAnnotation> pendingAnnotations = new LinkedBlockingQueue<>();
+    private Semaphore inFlightBatches;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    @Value("${vision.batch.max-size:16}")
+    int maxBatchSize;
+
+    @Value("${vision.batch.linger-ms:25}")
+    long lingerMillis;
+
+    @Value("${vision.max-in-flight:4}")
+    int maxInFlightBatches;
+
+    @Value("${vision.max-in-flight-wait-ms:0}")
+    long maxInFlightWaitMillis;
+
+    // the shared, thread-safe client provided by the spring cloud gcp vision starter, which closes it on shutdown
+    @Autowired
+    ImageAnnotatorClient imageAnnotatorClient;
+
+    @Autowired
+    ThreadPoolTaskExecutor visionExecutor;
+
+    @PostConstruct
+    public void start() {
+        maxBatchSize = Math.max(1, Math.min(maxBatchSize, MAX_API_BATCH_SIZE));
+        inFlightBatches = new Semaphore(maxInFlightBatches);
+        running = true;
+        dispatcher = new Thread(this::dispatchBatches, "vision-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        dispatcher.interrupt();
+    }
+
+    public CompletableFuture<AnnotateImageResponse> annotate(AnnotateImageRequest request) {
+        CompletableFuture<AnnotateImageResponse> response = new CompletableFuture<>();
+        pendingAnnotations.add(new PendingAnnotation(request, response));
+        return response;
+    }
+
+    private void dispatchBatches() {
+        while (running) {
+            try {
+                PendingAnnotation first = pendingAnnotations.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingAnnotation> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < maxBatchSize) {
+                    PendingAnnotation next = pendingAnnotations.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                if (!inFlightBatches.tryAcquire(maxInFlightWaitMillis, TimeUnit.MILLISECONDS)) {
+                    log.warn("Vision API calls at capacity, rejecting batch of " + batch.size() + " images");
+                    batch.forEach(pendingAnnotation ->
+                            pendingAnnotation.response.completeExceptionally(new VisionCapacityExceededException()));
+                    continue;
+                }
+                try {
+                    visionExecutor.execute(() -> send(batch));
+                } catch (Exception ex) {
+                    // send() won't run, so nothing else completes these callers' futures
+                    inFlightBatches.release();
+                    batch.forEach(pendingAnnotation -> pendingAnnotation.response.completeExceptionally(ex));
+                    throw ex;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.error("An error occurred dispatching a Vision API batch", ex);
+            }
+        }
+    }
+
+    private void send(List<PendingAnnotation> batch) {
+        List<AnnotateImageRequest> requests = batch.stream()
+                .map(pendingAnnotation -> pendingAnnotation.request)
+                .collect(Collectors.toList());
+        try {
+            BatchAnnotateImagesResponse batchResponse = imageAnnotatorClient.batchAnnotateImages(requests);
+            for (int i = 0; i < batch.size(); i++) {
+                CompletableFuture<AnnotateImageResponse> response = batch.get(i).response;
+                if (i >= batchResponse.getResponsesCount()) {
+                    response.completeExceptionally(new VisionAnnotationException("no response for image"));
+                } else if (batchResponse.getResponses(i).hasError()) {
+                    response.completeExceptionally(
+                            new VisionAnnotationException(batchResponse.getResponses(i).getError().getMessage()));
+                } else {
+                    response.complete(batchResponse.getResponses(i));
+                }
+            }
+        } catch (Exception ex) {
+            log.error("Vision API batch of " + batch.size() + " images failed", ex);
+            batch.forEach(pendingAnnotation -> pendingAnnotation.response.completeExceptionally(ex));
+        } finally {
+            inFlightBatches.release();
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingAnnotation {
+        private final AnnotateImageRequest request;
+        private final CompletableFuture<AnnotateImageResponse> response;
+    }
+}
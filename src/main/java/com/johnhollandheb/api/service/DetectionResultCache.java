@@ -0,0 +1,129 @@
+package com.johnhollandheb.api.service;
+
+import com.johnhollandheb.core.domain.DetectedImageObject;
+import com.johnhollandheb.core.domain.ImageEntity;
+import com.johnhollandheb.core.domain.ImageObjectMapRepository;
+import com.johnhollandheb.core.domain.ImageRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Caches detected objects (names, scores and boxes) by image content hash. Recently used hashes are kept in a bounded in-memory LRU
+// map; on a miss the image table is checked (via its indexed content_hash column) for an already detected image
+// with identical content, which makes the cache survive restarts and work across nodes.
+@Component
+public class DetectionResultCache {
+    private static final String REQUESTS_METER = "images.detection.cache.requests";
+
+    private final Lock lock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong durableHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Map<String, List<DetectedImageObject>> objectsByContentHash;
+
+    @Value("${images.detection.cache.max-entries:10000}")
+    int maxEntries;
+
+    @Autowired
+    ImageRepository imageRepository;
+
+    @Autowired
+    ImageObjectMapRepository imageObjectMapRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        objectsByContentHash = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<DetectedImageObject>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        FunctionCounter.builder(REQUESTS_METER, hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder(REQUESTS_METER, durableHits, AtomicLong::get)
+                .tag("result", "durable_hit")
+                .register(meterRegistry);
+        FunctionCounter.builder(REQUESTS_METER, misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("images.detection.cache.size", this, DetectionResultCache::size)
+                .register(meterRegistry);
+    }
+
+    public Optional<List<DetectedImageObject>> get(String contentHash) {
+        if (contentHash == null) {
+            return Optional.empty();
+        }
+
+        lock.lock();
+        try {
+            List<DetectedImageObject> objects = objectsByContentHash.get(contentHash);
+            if (objects != null) {
+                hits.incrementAndGet();
+                return Optional.of(objects);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        Optional<ImageEntity> detectedImage = imageRepository.findFirstByContentHashAndObjectsDetectedTrue(contentHash);
+        if (detectedImage.isEmpty()) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        List<DetectedImageObject> objects =
+                imageObjectMapRepository.findDetectedObjectsByImageId(detectedImage.get().getId());
+        put(contentHash, objects);
+        durableHits.incrementAndGet();
+        return Optional.of(List.copyOf(objects));
+    }
+
+    // the cached objects are shared, so callers must not modify them
+    public void put(String contentHash, Collection<DetectedImageObject> objects) {
+        if (contentHash == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            objectsByContentHash.put(contentHash, List.copyOf(objects));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // forgets the in-memory entries only; detected images are still found through the image table
+    void clear() {
+        lock.lock();
+        try {
+            objectsByContentHash.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int size() {
+        lock.lock();
+        try {
+            return objectsByContentHash.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.johnhollandheb.api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.johnhollandheb.api.object.Image;
+import com.johnhollandheb.core.domain.ImageChangeChannel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Node-local cache of assembled Image DTOs and of images' object name lists (used by the listings), bounded by
+// an estimate of their size in bytes and by a ttl, with Caffeine's W-TinyLFU eviction. An image is invalidated
+// here and, through ImageChangeChannel, on every other node when its objects are detected; the ttl bounds how
+// stale an entry can get if a notification is lost. New images aren't invalidated on save since nothing can
+// be cached for an id before it exists. Cached values are copied on the way in and out, as callers modify DTOs.
+@Component
+public class ImageCache implements ImageChangeChannel.Listener {
+    private static final String IMAGES_CACHE = "images.dto";
+    private static final String OBJECT_NAMES_CACHE = "images.object-names";
+
+    private Cache<UUID, Image> images;
+    private Cache<UUID, List<String>> objectNames;
+
+    @Value("${images.cache.enabled:true}")
+    boolean enabled;
+
+    @Value("${images.cache.max-bytes:67108864}")
+    long maxBytes;
+
+    @Value("${images.cache.ttl-seconds:600}")
+    long ttlSeconds;
+
+    @Autowired
+    ImageChangeChannel imageChangeChannel;
+
+    @Autowired
+    ImageMetrics imageMetrics;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        images = Caffeine.newBuilder()
+                .maximumWeight(enabled ? maxBytes / 2 : 0)
+                .weigher((UUID imageId, Image image) -> estimateSize(image))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        objectNames = Caffeine.newBuilder()
+                .maximumWeight(enabled ? maxBytes / 2 : 0)
+                .weigher((UUID imageId, List<String> names) -> estimateSize(names))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, images, IMAGES_CACHE);
+        CaffeineCacheMetrics.monitor(meterRegistry, objectNames, OBJECT_NAMES_CACHE);
+        imageChangeChannel.addListener(this);
+    }
+
+    // concurrent loads of an image share one load, and an invalidation waits for a running load to finish
+    public Image getImage(UUID imageId, Function<UUID, Image> loader) {
+        return copy(images.get(imageId, id -> copy(loader.apply(id))));
+    }
+
+    // images missing from the cache are loaded with one call; an invalidation while that call runs can be lost,
+    // which the ttl bounds
+    public Map<UUID, List<String>> getObjectNames(Collection<UUID> imageIds,
+                                                  Function<Set<UUID>, Map<UUID, List<String>>> loader) {
+        Map<UUID, List<String>> cachedObjectNames = objectNames.getAll(imageIds, ids -> {
+            Map<UUID, List<String>> loadedObjectNames = new LinkedHashMap<>();
+            loader.apply(Set.copyOf(ids)).forEach((id, names) -> loadedObjectNames.put(id, List.copyOf(names)));
+            return loadedObjectNames;
+        });
+        Map<UUID, List<String>> result = new LinkedHashMap<>();
+        cachedObjectNames.forEach((id, names) -> result.put(id, new ArrayList<>(names)));
+        return result;
+    }
+
+    // the image changed on this node: drop it here and tell the other nodes
+    public void invalidate(UUID imageId) {
+        invalidateLocally(imageId);
+        imageChangeChannel.publish(imageId);
+    }
+
+    @Override
+    public void imageChanged(UUID imageId, Instant changedAt) {
+        invalidateLocally(imageId);
+        imageMetrics.invalidationLag(Duration.between(changedAt, Instant.now()));
+    }
+
+    @Override
+    public void changesMissed() {
+        images.invalidateAll();
+        objectNames.invalidateAll();
+    }
+
+    private void invalidateLocally(UUID imageId) {
+        images.invalidate(imageId);
+        objectNames.invalidate(imageId);
+    }
+
+    private static Image copy(Image image) {
+        return image.toBuilder()
+                .objects(image.getObjects() != null ? new ArrayList<>(image.getObjects()) : null)
+                .thumbnailUrls(image.getThumbnailUrls() != null ? new LinkedHashMap<>(image.getThumbnailUrls()) : null)
+                .build();
+    }
+
+    // rough heap footprint: object headers and references plus two bytes per character
+    private static int estimateSize(Image image) {
+        int size = 256 + estimateSize(image.getLabel()) + estimateSize(image.getFileName())
+                + estimateSize(image.getImageType()) + estimateSize(image.getImageUrl());
+        if (image.getObjects() != null) {
+            size += estimateSize(image.getObjects());
+        }
+        if (image.getThumbnailUrls() != null) {
+            size += image.getThumbnailUrls().size() * 160;
+        }
+        return size;
+    }
+
+    private static int estimateSize(List<String> names) {
+        int size = 64;
+        for (String name : names) {
+            size += estimateSize(name);
+        }
+        return size;
+    }
+
+    private static int estimateSize(String value) {
+        return (value == null) ? 0 : 48 + value.length() * 2;
+    }
+}
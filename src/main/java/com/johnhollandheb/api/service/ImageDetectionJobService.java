@@ -0,0 +1,110 @@
+package com.johnhollandheb.api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.johnhollandheb.api.object.DetectionStatus;
+import com.johnhollandheb.api.service.exception.DetectionRejectedException;
+import com.johnhollandheb.api.service.exception.VisionCapacityExceededException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Runs object detection off the request thread. Only pending and failed or rejected jobs are tracked here (per
+// node); completion is recorded by ImageRepository.setObjectsDetected (called by DetectedImageObjectWriter in the
+// same transaction as the objects), which stays the source of truth for done.
+// Pending jobs are bounded by the detection executor's queue; failed ones expire (or are evicted) so an outage
+// doesn't grow the map by one entry per upload, after which the image reads as not requested.
+@Component
+@Slf4j
+public class ImageDetectionJobService {
+    private final Map<UUID, DetectionJob> pendingJobs = new ConcurrentHashMap<>();
+    Cache<UUID, DetectionJob> failedJobs;
+
+    @Autowired
+    ImageObjectionDetectionService imageObjectionDetectionService;
+
+    @Autowired
+    ThreadPoolTaskExecutor detectionExecutor;
+
+    @Value("${images.detection.failed-jobs.max-entries:10000}")
+    long maxFailedJobs;
+
+    @Value("${images.detection.failed-jobs.ttl-seconds:3600}")
+    long failedJobTtlSeconds;
+
+    @PostConstruct
+    public void init() {
+        failedJobs = Caffeine.newBuilder()
+                .maximumSize(maxFailedJobs)
+                .expireAfterWrite(Duration.ofSeconds(failedJobTtlSeconds))
+                .build();
+    }
+
+    // A job already pending for the image is returned as is rather than queued twice. A rejected job is
+    // recorded as REJECTED before the exception is thrown, so it can be requested again later.
+    public DetectionJob submit(UUID imageId, String contentHash) {
+        DetectionJob job = new DetectionJob(DetectionStatus.PENDING, null);
+        DetectionJob pendingJob = pendingJobs.putIfAbsent(imageId, job);
+        if (pendingJob != null) {
+            return pendingJob;
+        }
+        failedJobs.invalidate(imageId);
+        try {
+            detectionExecutor.execute(() -> detect(imageId, contentHash));
+        } catch (TaskRejectedException ex) {
+            pendingJobs.remove(imageId);
+            log.warn("Detection queue is full, rejected detection for imageId=" + imageId);
+            DetectionRejectedException rejectedException = new DetectionRejectedException(imageId.toString(), ex);
+            rejected(imageId, rejectedException.getMessage());
+            throw rejectedException;
+        }
+        return job;
+    }
+
+    // for detections turned away before they ran, e.g. synchronous ones over the Vision in-flight limit
+    public void rejected(UUID imageId, String error) {
+        failedJobs.put(imageId, new DetectionJob(DetectionStatus.REJECTED, error));
+    }
+
+    public Optional<DetectionJob> getJob(UUID imageId) {
+        DetectionJob pendingJob = pendingJobs.get(imageId);
+        return (pendingJob != null) ? Optional.of(pendingJob) : Optional.ofNullable(failedJobs.getIfPresent(imageId));
+    }
+
+    // image bytes are read from the content store when the job runs so queued jobs don't hold image data
+    private void detect(UUID imageId, String contentHash) {
+        try {
+            if (imageObjectionDetectionService.reuseDetectedImageObjects(contentHash, imageId.toString()).isEmpty()) {
+                imageObjectionDetectionService.detectImageObjects(contentHash, imageId.toString());
+            }
+            pendingJobs.remove(imageId);
+        } catch (VisionCapacityExceededException ex) {
+            log.warn("Vision API calls at capacity, rejected detection for imageId=" + imageId);
+            rejected(imageId, ex.getMessage());
+            pendingJobs.remove(imageId);
+        } catch (Exception ex) {
+            log.error("Asynchronous object detection failed for imageId=" + imageId, ex);
+            failedJobs.put(imageId, new DetectionJob(DetectionStatus.FAILED, ex.getMessage()));
+            pendingJobs.remove(imageId);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class DetectionJob {
+        private final DetectionStatus status;
+        private final String error;
+    }
+}
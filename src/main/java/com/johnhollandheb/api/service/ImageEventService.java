@@ -0,0 +1,405 @@
+package com.johnhollandheb.api.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.johnhollandheb.api.object.ImageDetectedEvent;
+import com.johnhollandheb.api.service.exception.TooManySubscribersException;
+import com.johnhollandheb.core.domain.ImageChangeChannel;
+import com.johnhollandheb.core.domain.ImageObjectMapRepository;
+import com.johnhollandheb.core.domain.ImageObjectName;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Server-sent "detected" events (GET /images/events) for images whose objects were detected, here or on another
+// node (through ImageChangeChannel). Every subscriber has a small bounded buffer of pending events that's written
+// to its connection on eventExecutor, at most one write per subscriber at a time, so publishing never blocks on a
+// client. A subscriber whose buffer fills up is evicted (its stream is completed, EventSource clients reconnect),
+// and idle streams get a heartbeat comment so dead connections are noticed and proxies keep them open. An idle
+// subscriber is just its emitter and a few fields; buffers only grow while events are pending.
+// A write that takes longer than images.events.write-timeout-ms gets its subscriber evicted and its thread
+// interrupted. Until the blocked write returns, the pool gets an extra thread in its place, so a few stalled
+// clients can't hold up every other subscriber's writes.
+@Component
+@Slf4j
+public class ImageEventService implements ImageChangeChannel.Listener {
+    private static final String DETECTED_EVENT = "detected";
+    private static final PendingEvent HEARTBEAT = new PendingEvent(null, null);
+
+    private final Set<Subscriber> allImagesSubscribers = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Set<Subscriber>> subscribersByImageId = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicInteger stalledWrites = new AtomicInteger();
+    private final Lock poolSizeLock = new ReentrantLock();
+    private Counter evictions;
+    private Thread heartbeatThread;
+    private volatile boolean running;
+
+    @Autowired
+    ImageChangeChannel imageChangeChannel;
+
+    @Autowired
+    ImageObjectMapRepository imageObjectMapRepository;
+
+    @Autowired
+    ThreadPoolTaskExecutor eventExecutor;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${images.events.max-subscribers:10000}")
+    int maxSubscribers;
+
+    @Value("${images.events.buffer-size:32}")
+    int bufferSize;
+
+    @Value("${images.events.heartbeat-ms:15000}")
+    long heartbeatMillis;
+
+    @Value("${images.events.timeout-ms:3600000}")
+    long timeoutMillis;
+
+    @Value("${images.events.write-timeout-ms:5000}")
+    long writeTimeoutMillis;
+
+    // at most this many threads are added in place of stalled writes
+    @Value("${images.events.max-stalled-writes:64}")
+    int maxStalledWrites;
+
+    @PostConstruct
+    public void init() {
+        evictions = Counter.builder("images.events.evictions").register(meterRegistry);
+        Gauge.builder("images.events.subscribers", subscriberCount, AtomicInteger::get).register(meterRegistry);
+        imageChangeChannel.addListener(this);
+        running = true;
+        heartbeatThread = new Thread(this::checkSubscribers, "image-events-heartbeat");
+        heartbeatThread.setDaemon(true);
+        heartbeatThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (heartbeatThread != null) {
+            heartbeatThread.interrupt();
+        }
+    }
+
+    // an empty imageIds subscribes to every image
+    public SseEmitter subscribe(Collection<UUID> imageIds) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new TooManySubscribersException("Too many event subscribers, retry later");
+        }
+        Subscriber subscriber = new Subscriber(newEmitter(), Set.copyOf(imageIds));
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onError(ex -> remove(subscriber));
+        subscriber.emitter.onTimeout(() -> {
+            remove(subscriber);
+            subscriber.emitter.complete();
+        });
+        if (subscriber.imageIds.isEmpty()) {
+            allImagesSubscribers.add(subscriber);
+        } else {
+            subscriber.imageIds.forEach(imageId ->
+                    subscribersByImageId.computeIfAbsent(imageId, id -> ConcurrentHashMap.newKeySet()).add(subscriber));
+        }
+        // sent right away so the response (and its headers) is committed before the first real event
+        subscriber.offer(HEARTBEAT);
+        return subscriber.emitter;
+    }
+
+    public void imageObjectsDetected(UUID imageId, List<String> objectNames) {
+        if (!hasSubscribers(imageId)) {
+            return;
+        }
+        PendingEvent event;
+        try {
+            event = new PendingEvent(DETECTED_EVENT, objectMapper.writeValueAsString(ImageDetectedEvent.builder()
+                    .imageId(imageId.toString())
+                    .objects(objectNames)
+                    .build()));
+        } catch (JsonProcessingException ex) {
+            log.error("Could not serialize the detected event for image with id=" + imageId, ex);
+            return;
+        }
+        allImagesSubscribers.forEach(subscriber -> subscriber.offer(event));
+        Set<Subscriber> imageSubscribers = subscribersByImageId.get(imageId);
+        if (imageSubscribers != null) {
+            imageSubscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    // only detections change images on other nodes, so a change notification means its objects were detected
+    @Override
+    public void imageChanged(UUID imageId, Instant changedAt) {
+        if (!hasSubscribers(imageId)) {
+            return;
+        }
+        try {
+            imageObjectsDetected(imageId, imageObjectMapRepository.findAllByImageId(imageId).stream()
+                    .map(ImageObjectName::getObjectName)
+                    .collect(Collectors.toList()));
+        } catch (Exception ex) {
+            log.warn("Could not load the detected objects of image with id=" + imageId + " for its event", ex);
+        }
+    }
+
+    // events published while disconnected are lost; clients that need certainty can check GET /images/{imageId}
+    @Override
+    public void changesMissed() {
+    }
+
+    int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    boolean hasSubscribers(UUID imageId) {
+        return !allImagesSubscribers.isEmpty() || subscribersByImageId.containsKey(imageId);
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (!subscriber.removed.compareAndSet(false, true)) {
+            return;
+        }
+        subscriberCount.decrementAndGet();
+        allImagesSubscribers.remove(subscriber);
+        for (UUID imageId : subscriber.imageIds) {
+            subscribersByImageId.computeIfPresent(imageId, (id, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+
+    // sends heartbeats to idle subscribers and evicts the ones with an overdue write
+    private void checkSubscribers() {
+        long checkMillis = Math.max(1, Math.min(heartbeatMillis, writeTimeoutMillis) / 2);
+        while (running) {
+            try {
+                Thread.sleep(checkMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long now = System.nanoTime();
+            long idleSince = now - TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+            long writeDeadline = now - TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+            allImagesSubscribers.forEach(subscriber -> subscriber.check(idleSince, writeDeadline));
+            subscribersByImageId.values().forEach(subscribers ->
+                    subscribers.forEach(subscriber -> subscriber.check(idleSince, writeDeadline)));
+        }
+    }
+
+    // grows the pool first and shrinks it last, as the core size can't exceed the max size
+    private void resizeEventExecutor(int delta) {
+        poolSizeLock.lock();
+        try {
+            if (delta > 0) {
+                eventExecutor.setMaxPoolSize(eventExecutor.getMaxPoolSize() + delta);
+                eventExecutor.setCorePoolSize(eventExecutor.getCorePoolSize() + delta);
+            } else {
+                eventExecutor.setCorePoolSize(eventExecutor.getCorePoolSize() + delta);
+                eventExecutor.setMaxPoolSize(eventExecutor.getMaxPoolSize() + delta);
+            }
+        } finally {
+            poolSizeLock.unlock();
+        }
+    }
+
+    // an event serialized once for all subscribers; a null name is a heartbeat comment
+    @AllArgsConstructor
+    private static class PendingEvent {
+        private final String name;
+        private final String data;
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<UUID> imageIds;
+        private final Lock lock = new ReentrantLock();
+        private final AtomicBoolean removed = new AtomicBoolean();
+        private Deque<PendingEvent> pending;
+        private boolean draining;
+        private boolean evicted;
+        // the thread of the write in progress, if any, and when that write started
+        private Thread writer;
+        private long writeStartedAt;
+        // the write overran its deadline and a thread was added to the pool in its place
+        private boolean stalled;
+        private volatile long lastSentAt = System.nanoTime();
+
+        Subscriber(SseEmitter emitter, Set<UUID> imageIds) {
+            this.emitter = emitter;
+            this.imageIds = imageIds;
+        }
+
+        void check(long idleSince, long writeDeadline) {
+            boolean overdue;
+            lock.lock();
+            try {
+                overdue = writer != null && !evicted && writeStartedAt - writeDeadline < 0;
+                if (overdue) {
+                    log.info("Evicting an image event subscriber whose write took longer than "
+                            + writeTimeoutMillis + "ms");
+                    evictions.increment();
+                    evicted = true;
+                    pending = null;
+                    if (stalledWrites.incrementAndGet() <= maxStalledWrites) {
+                        stalled = true;
+                        resizeEventExecutor(1);
+                    } else {
+                        stalledWrites.decrementAndGet();
+                    }
+                    // ends a write blocked in channel i/o; one waiting on the socket ends at the connector's timeout
+                    writer.interrupt();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (overdue) {
+                remove(this);
+            } else if (lastSentAt - idleSince < 0) {
+                offer(HEARTBEAT);
+            }
+        }
+
+        // a full buffer means the client isn't keeping up, so it's evicted rather than buffered without bound
+        void offer(PendingEvent event) {
+            lock.lock();
+            try {
+                if (evicted) {
+                    return;
+                }
+                if (pending == null) {
+                    pending = new ArrayDeque<>(4);
+                }
+                if (pending.size() >= bufferSize) {
+                    log.info("Evicting a slow image event subscriber with " + pending.size() + " pending events");
+                    evictions.increment();
+                    evicted = true;
+                    pending = null;
+                    remove(this);
+                } else {
+                    pending.add(event);
+                }
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                eventExecutor.execute(this::drain);
+            } catch (Exception ex) {
+                log.warn("Could not schedule writing image events, dropping the subscriber", ex);
+                remove(this);
+                emitter.complete();
+            }
+        }
+
+        // completing the emitter is done here too, since it waits for a write in progress
+        private void drain() {
+            while (true) {
+                PendingEvent event;
+                boolean complete;
+                lock.lock();
+                try {
+                    complete = evicted;
+                    event = (evicted || pending == null) ? null : pending.poll();
+                    if (event == null) {
+                        draining = false;
+                        pending = null;
+                    } else {
+                        writer = Thread.currentThread();
+                        writeStartedAt = System.nanoTime();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (complete) {
+                    emitter.complete();
+                    return;
+                }
+                if (event == null) {
+                    return;
+                }
+                try {
+                    emitter.send(event.name == null
+                            ? SseEmitter.event().comment("")
+                            : SseEmitter.event().name(event.name).data(event.data));
+                    lastSentAt = System.nanoTime();
+                } catch (Exception ex) {
+                    // usually the client went away
+                    log.debug("Dropping image event subscriber after a failed write", ex);
+                    finishWrite();
+                    lock.lock();
+                    try {
+                        evicted = true;
+                        draining = false;
+                        pending = null;
+                    } finally {
+                        lock.unlock();
+                    }
+                    remove(this);
+                    emitter.completeWithError(ex);
+                    return;
+                }
+                finishWrite();
+            }
+        }
+
+        // after check() no longer interrupts this thread, so its interrupt (if any) can be cleared for the pool
+        private void finishWrite() {
+            boolean wasStalled;
+            lock.lock();
+            try {
+                writer = null;
+                wasStalled = stalled;
+                stalled = false;
+                if (evicted) {
+                    Thread.interrupted();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (wasStalled) {
+                resizeEventExecutor(-1);
+                stalledWrites.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.johnhollandheb.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.johnhollandheb.api.object.Image;
+import com.johnhollandheb.api.object.ImageImportResult;
+import com.johnhollandheb.api.object.ImageImportStatus;
+import com.johnhollandheb.api.object.ImageUploadRequest;
+import com.johnhollandheb.core.domain.ImageEntity;
+import com.johnhollandheb.core.domain.ImageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Bulk import of ndjson upload requests or a zip of image files. Items flow through three stages a chunk at a
+// time: prepare (decode or fetch, then store the content) on importExecutor, persist (one saveAll per chunk, so
+// the inserts are jdbc batched) and detect on importDetectionExecutor, where concurrent detections are grouped
+// into batchAnnotateImages calls by BatchingImageAnnotator. One chunk is detected while the next one is
+// prepared. A result line is written for every item in input order, and a bad item only fails itself.
+@Component
+@Slf4j
+public class ImageImportService {
+
+    @Autowired
+    ImageService imageService;
+
+    @Autowired
+    ImageRepository imageRepository;
+
+    @Autowired
+    ImageRenditionService imageRenditionService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ThreadPoolTaskExecutor importExecutor;
+
+    @Autowired
+    ThreadPoolTaskExecutor importDetectionExecutor;
+
+    @Value("${images.import.chunk-size:100}")
+    int chunkSize;
+
+    // one ImageUploadRequest per line, blank lines are skipped
+    public void importNdjson(InputStream ndjson, String userAgent, OutputStream results) throws IOException {
+        ImportPipeline pipeline = new ImportPipeline(results);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!StringUtils.hasText(line)) {
+                continue;
+            }
+            String requestLine = line;
+            pipeline.add(CompletableFuture.supplyAsync(() -> prepareRequest(requestLine, userAgent), importExecutor));
+        }
+        pipeline.finish();
+    }
+
+    // every file in the zip is imported as an image named after the file; directories are skipped
+    public void importZip(InputStream zip, boolean detectObjects, OutputStream results) throws IOException {
+        ImportPipeline pipeline = new ImportPipeline(results);
+        try (ZipInputStream zipInputStream = new ZipInputStream(zip)) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                // zip entries can only be read in order, so their content is stored on this thread
+                pipeline.add(CompletableFuture.completedFuture(
+                        prepareZipEntry(zipEntry, zipInputStream, detectObjects)));
+            }
+        }
+        pipeline.finish();
+    }
+
+    private ImportItem prepareRequest(String requestLine, String userAgent) {
+        ImportItem item = new ImportItem();
+        try {
+            ImageUploadRequest uploadRequest = objectMapper.readValue(requestLine, ImageUploadRequest.class);
+            item.fileName = uploadRequest.getFileName();
+            item.detectObjects = Boolean.TRUE.equals(uploadRequest.getDetectObjects());
+            item.imageEntity = imageService.prepareImage(uploadRequest, userAgent);
+        } catch (Exception ex) {
+            item.error = ex.getMessage();
+        }
+        return item;
+    }
+
+    private ImportItem prepareZipEntry(ZipEntry zipEntry, ZipInputStream zipInputStream, boolean detectObjects) {
+        ImportItem item = new ImportItem();
+        String entryName = zipEntry.getName();
+        item.fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        item.detectObjects = detectObjects;
+        ImageUploadRequest uploadRequest = ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(detectObjects)
+                .fileName(item.fileName)
+                .build();
+        try {
+            item.imageEntity = imageService.prepareImage(uploadRequest, StreamUtils.nonClosing(zipInputStream));
+        } catch (Exception ex) {
+            item.error = ex.getMessage();
+        }
+        return item;
+    }
+
+    private class ImportPipeline {
+        private final OutputStream results;
+        private final Deque<List<CompletableFuture<ImageImportResult>>> detectingChunks = new ArrayDeque<>();
+        private List<CompletableFuture<ImportItem>> preparingChunk = new ArrayList<>();
+        private int nextIndex;
+
+        ImportPipeline(OutputStream results) {
+            this.results = results;
+        }
+
+        void add(CompletableFuture<ImportItem> preparedItem) throws IOException {
+            int index = nextIndex++;
+            preparingChunk.add(preparedItem.thenApply(item -> {
+                item.index = index;
+                return item;
+            }));
+            if (preparingChunk.size() >= chunkSize) {
+                startDetecting();
+                // keeps at most one chunk in detection while the next one is being prepared
+                while (detectingChunks.size() > 1) {
+                    writeResults(detectingChunks.poll());
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            startDetecting();
+            while (!detectingChunks.isEmpty()) {
+                writeResults(detectingChunks.poll());
+            }
+        }
+
+        private void startDetecting() {
+            if (preparingChunk.isEmpty()) {
+                return;
+            }
+            List<ImportItem> items = preparingChunk.stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+            preparingChunk = new ArrayList<>();
+            persist(items);
+            detectingChunks.add(items.stream().map(this::detect).collect(Collectors.toList()));
+        }
+
+        private CompletableFuture<ImageImportResult> detect(ImportItem item) {
+            if (item.error != null) {
+                return CompletableFuture.completedFuture(toResult(item, ImageImportStatus.FAILED, null, item.error));
+            }
+            Image savedImage = Image.fromEntity(item.imageEntity);
+            if (!item.detectObjects) {
+                return CompletableFuture.completedFuture(toResult(item, ImageImportStatus.IMPORTED, savedImage, null));
+            }
+            Supplier<ImageImportResult> detectImageObjects = () -> {
+                try {
+                    Image image = imageService.detectImageObjects(savedImage, item.imageEntity.getContentHash());
+                    return toResult(item, ImageImportStatus.IMPORTED, image, null);
+                } catch (Exception ex) {
+                    return toResult(item, ImageImportStatus.DETECTION_FAILED, savedImage, ex.getMessage());
+                }
+            };
+            return CompletableFuture.supplyAsync(detectImageObjects, importDetectionExecutor);
+        }
+
+        private void writeResults(List<CompletableFuture<ImageImportResult>> chunkResults) throws IOException {
+            for (CompletableFuture<ImageImportResult> result : chunkResults) {
+                results.write(objectMapper.writeValueAsBytes(result.join()));
+                results.write('\n');
+            }
+            results.flush();
+        }
+    }
+
+    // a failed batch insert is retried one image at a time so only the offending items fail
+    private void persist(List<ImportItem> items) {
+        List<ImportItem> preparedItems = items.stream()
+                .filter(item -> item.error == null)
+                .collect(Collectors.toList());
+        if (preparedItems.isEmpty()) {
+            return;
+        }
+        try {
+            imageRepository.saveAll(preparedItems.stream()
+                    .map(item -> item.imageEntity)
+                    .collect(Collectors.toList()));
+        } catch (Exception batchEx) {
+            log.warn("Batch insert of " + preparedItems.size() + " imported images failed, saving them one by one",
+                    batchEx);
+            for (ImportItem item : preparedItems) {
+                try {
+                    imageRepository.save(item.imageEntity);
+                } catch (Exception ex) {
+                    item.error = ex.getMessage();
+                }
+            }
+        }
+        preparedItems.stream()
+                .filter(item -> item.error == null)
+                .forEach(item -> {
+                    imageService.indexSavedImage(item.imageEntity);
+                    imageRenditionService.requestRenditions(item.imageEntity.getContentHash());
+                });
+    }
+
+    private ImageImportResult toResult(ImportItem item, ImageImportStatus status, Image image, String error) {
+        return ImageImportResult.builder()
+                .index(item.index)
+                .fileName(item.fileName)
+                .status(status)
+                .image(image)
+                .error(error)
+                .build();
+    }
+
+    private static class ImportItem {
+        private int index;
+        private String fileName;
+        private boolean detectObjects;
+        private ImageEntity imageEntity;
+        private String error;
+    }
+}
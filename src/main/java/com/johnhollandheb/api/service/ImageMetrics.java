@@ -0,0 +1,133 @@
+package com.johnhollandheb.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Meters of the upload and detection paths (the detection cache registers its own). The names and tags below are what dashboards and alerts are
+// built on (exposed through /actuator/prometheus), so they must not be renamed; add new meters or tag values
+// instead. Stage timers publish histogram buckets so percentiles can be aggregated across nodes.
+@Component
+public class ImageMetrics {
+    // time spent in each stage of saving an image, tagged with one of the UPLOAD_STAGE_* values
+    public static final String UPLOAD_STAGE_TIMER = "images.upload.stage";
+    // decoding base64/multipart data (or fetching a linked image) and writing it to the content store
+    public static final String UPLOAD_STAGE_STORE = "store";
+    public static final String UPLOAD_STAGE_FETCH = "fetch";
+    // decoding the stored content to compute its perceptual hash (skipped for already hashed content)
+    public static final String UPLOAD_STAGE_HASH = "hash";
+    // inserting the image row
+    public static final String UPLOAD_STAGE_PERSIST = "persist";
+    // detection of a synchronous upload, from checking for reusable results to saving the objects
+    public static final String UPLOAD_STAGE_DETECT = "detect";
+
+    // time spent in each stage of detecting objects, tagged with one of the DETECTION_STAGE_* values
+    public static final String DETECTION_STAGE_TIMER = "images.detection.stage";
+    public static final String DETECTION_STAGE_READ = "read";
+    public static final String DETECTION_STAGE_PREPROCESS = "preprocess";
+    public static final String DETECTION_STAGE_SAVE = "save";
+    // time from submitting an image until its (batched) Vision response arrives
+    public static final String VISION_LATENCY_TIMER = "vision.request.latency";
+
+    // images saved, tagged source=inline|link|stream
+    public static final String IMAGES_UPLOADED_COUNTER = "images.uploaded";
+    // size of each saved image's content as decoded/fetched
+    public static final String UPLOAD_BYTES_SUMMARY = "images.upload.bytes";
+    // size of each image as stored (stage=original) and as sent to the Vision API (stage=sent)
+    public static final String VISION_IMAGE_BYTES_SUMMARY = "vision.request.image.bytes";
+    // distinct object names saved per detection
+    public static final String OBJECTS_DETECTED_COUNTER = "images.objects.detected";
+    // failed detections, tagged reason=capacity|error
+    public static final String VISION_ERRORS_COUNTER = "vision.errors";
+    // detections currently reading, waiting on Vision or saving
+    public static final String DETECTIONS_IN_FLIGHT_GAUGE = "images.detection.in-flight";
+
+    // time from a change on another node until it's invalidated in this node's ImageCache (clocks permitting)
+    public static final String CACHE_INVALIDATION_LAG_TIMER = "images.cache.invalidation.lag";
+
+    private final AtomicInteger detectionsInFlight = new AtomicInteger();
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder(DETECTIONS_IN_FLIGHT_GAUGE, detectionsInFlight, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stopUploadStage(Timer.Sample sample, String stage) {
+        sample.stop(stageTimer(UPLOAD_STAGE_TIMER, stage));
+    }
+
+    public void stopDetectionStage(Timer.Sample sample, String stage) {
+        sample.stop(stageTimer(DETECTION_STAGE_TIMER, stage));
+    }
+
+    public void stopVisionLatency(Timer.Sample sample) {
+        sample.stop(Timer.builder(VISION_LATENCY_TIMER)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    public void imageUploaded(String source, long contentLength) {
+        Counter.builder(IMAGES_UPLOADED_COUNTER)
+                .tag("source", source)
+                .register(meterRegistry)
+                .increment();
+        DistributionSummary.builder(UPLOAD_BYTES_SUMMARY)
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .record(contentLength);
+    }
+
+    public void visionImageBytes(String stage, long bytes) {
+        DistributionSummary.builder(VISION_IMAGE_BYTES_SUMMARY)
+                .baseUnit("bytes")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    public void objectsDetected(int objectCount) {
+        meterRegistry.counter(OBJECTS_DETECTED_COUNTER).increment(objectCount);
+    }
+
+    public void visionError(String reason) {
+        meterRegistry.counter(VISION_ERRORS_COUNTER, "reason", reason).increment();
+    }
+
+    public void invalidationLag(Duration lag) {
+        Timer.builder(CACHE_INVALIDATION_LAG_TIMER)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(lag.isNegative() ? Duration.ZERO : lag);
+    }
+
+    public void detectionStarted() {
+        detectionsInFlight.incrementAndGet();
+    }
+
+    public void detectionFinished() {
+        detectionsInFlight.decrementAndGet();
+    }
+
+    private Timer stageTimer(String name, String stage) {
+        return Timer.builder(name)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
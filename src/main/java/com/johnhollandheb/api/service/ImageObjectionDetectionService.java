@@ -2,87 +2,215 @@ package com.johnhollandheb.api.service;
 
 import com.google.cloud.vision.v1.AnnotateImageRequest;
 import com.google.cloud.vision.v1.AnnotateImageResponse;
-import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
 import com.google.cloud.vision.v1.Feature;
 import com.google.cloud.vision.v1.Image;
-import com.google.cloud.vision.v1.ImageAnnotatorClient;
 import com.google.cloud.vision.v1.LocalizedObjectAnnotation;
+import com.google.cloud.vision.v1.NormalizedVertex;
 import com.google.protobuf.ByteString;
 import com.johnhollandheb.api.service.exception.ObjectDetectionException;
-import com.johnhollandheb.core.domain.ImageObjectMapEntity;
-import com.johnhollandheb.core.domain.ImageObjectMapRepository;
-import com.johnhollandheb.core.domain.ImageRepository;
+import com.johnhollandheb.api.service.exception.VisionCapacityExceededException;
+import com.johnhollandheb.core.content.ImageContentStore;
+import com.johnhollandheb.core.domain.DetectedImageObject;
+import com.johnhollandheb.core.domain.DetectedImageObjectWriter;
+import com.johnhollandheb.core.index.ObjectNameIndex;
+import com.johnhollandheb.core.rendition.ImageScaler;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class ImageObjectionDetectionService {
+    private static final String ORIGINAL_STAGE = "original";
+    private static final String SENT_STAGE = "sent";
 
     @Autowired
-    private ImageObjectMapRepository imageObjectMapRepository;
+    DetectedImageObjectWriter detectedImageObjectWriter;
 
     @Autowired
-    ImageRepository imageRepository;
+    ObjectNameIndex objectNameIndex;
 
-    // in addition to persisting, we'll return the object names to avoid a database
-    // lookup for newly saved image objects
-    public List<String> detectImageObjects(File imageFile, String imageId) {
+    @Autowired
+    BatchingImageAnnotator batchingImageAnnotator;
+
+    @Autowired
+    DetectionResultCache detectionResultCache;
+
+    @Autowired
+    ImageContentStore imageContentStore;
+
+    @Autowired
+    ImageMetrics imageMetrics;
+
+    @Autowired
+    ImageCache imageCache;
+
+    @Autowired
+    ImageEventService imageEventService;
+
+    @Value("${vision.request.timeout-ms:60000}")
+    long visionTimeoutMillis;
+
+    @Value("${vision.preprocess.enabled:true}")
+    boolean preprocessEnabled;
+
+    @Value("${vision.preprocess.max-dimension:1024}")
+    int preprocessMaxDimension;
+
+    @Value("${vision.preprocess.min-bytes:262144}")
+    long preprocessMinBytes;
+
+    @Value("${vision.preprocess.jpeg-quality:0.85}")
+    float preprocessJpegQuality;
+
+    // Reuses the objects already detected for identical image content (same sha-256 hash), if any, instead of
+    // calling the Vision API again. Returns empty when the content has not been seen before.
+    public Optional<List<String>> reuseDetectedImageObjects(String contentHash, String imageId) {
+        Optional<List<DetectedImageObject>> cachedObjects = detectionResultCache.get(contentHash);
+        cachedObjects.ifPresent(objects -> saveDetectedImageObjects(objects, imageId));
+        return cachedObjects.map(ImageObjectionDetectionService::toObjectNames);
+    }
+
+    // The image bytes are read from the content store straight into the request. In addition to persisting,
+    // we'll return the object names to avoid a database lookup for newly saved image objects.
+    public List<String> detectImageObjects(String contentHash, String imageId) {
+        imageMetrics.detectionStarted();
         try {
-            String filePath = imageFile.getPath();
-            AnnotateImageRequest request = buildAnnotateImageRequest(filePath);
-            List<AnnotateImageRequest> requests = Collections.singletonList(request);
-            ImageAnnotatorClient client = ImageAnnotatorClient.create();
-            BatchAnnotateImagesResponse response = client.batchAnnotateImages(requests);
-            Set<String> objects = saveAndReturnDetectedImageObjectNames(response, imageId);
-            imageRepository.setObjectsDetected(UUID.fromString(imageId));
-            return new ArrayList<>(objects);
+            AnnotateImageRequest request = buildAnnotateImageRequest(contentHash);
+            AnnotateImageResponse response = annotate(request);
+            List<DetectedImageObject> objects = getDetectedImageObjects(response);
+            Timer.Sample saveSample = imageMetrics.startTimer();
+            saveDetectedImageObjects(objects, imageId);
+            imageMetrics.stopDetectionStage(saveSample, ImageMetrics.DETECTION_STAGE_SAVE);
+            imageMetrics.objectsDetected(objects.size());
+            detectionResultCache.put(contentHash, objects);
+            return toObjectNames(objects);
+        } catch (VisionCapacityExceededException ex) {
+            imageMetrics.visionError("capacity");
+            throw ex;
         } catch (Exception ex) {
             log.error("An error occurred during object detection", ex);
+            imageMetrics.visionError("error");
             throw new ObjectDetectionException(ex);
         } finally {
-            imageFile.delete();
+            imageMetrics.detectionFinished();
         }
     }
 
     // NOTE: an intentional decision was made in the app/schema design to not persist duplicate object names
-    // for an image which is why we're building a set instead of a list here.
-    private Set<String> saveAndReturnDetectedImageObjectNames(BatchAnnotateImagesResponse response, String imageId) {
-        Set<String> objectNameSet = new HashSet<>();
-
-        List<AnnotateImageResponse> responses = response.getResponsesList();
-        for (AnnotateImageResponse annotateImageResponse: responses) {
-            for (LocalizedObjectAnnotation objectAnnotationEntity : annotateImageResponse.getLocalizedObjectAnnotationsList()) {
-                String objectName = objectAnnotationEntity.getName();
-                objectNameSet.add(objectName);
-
-                ImageObjectMapEntity imageObjectMapEntity = ImageObjectMapEntity.builder()
-                        .imageId(UUID.fromString(imageId))
-                        .objectName(objectName)
-                        .build();
-                this.imageObjectMapRepository.save(imageObjectMapEntity);
-            }
+    // for an image, so when an object is detected more than once only its highest scoring detection is kept.
+    static List<DetectedImageObject> getDetectedImageObjects(AnnotateImageResponse response) {
+        Map<String, DetectedImageObject> objectsByName = new LinkedHashMap<>();
+        for (LocalizedObjectAnnotation objectAnnotation : response.getLocalizedObjectAnnotationsList()) {
+            DetectedImageObject detectedObject = toDetectedImageObject(objectAnnotation);
+            objectsByName.merge(objectAnnotation.getName().trim().toLowerCase(Locale.ROOT), detectedObject,
+                    (first, second) -> second.getScore() > first.getScore() ? second : first);
+        }
+        return new ArrayList<>(objectsByName.values());
+    }
+
+    // the box is the extent of the annotation's normalized vertices, clamped to the image
+    private static DetectedImageObject toDetectedImageObject(LocalizedObjectAnnotation objectAnnotation) {
+        float left = 1, top = 1, right = 0, bottom = 0;
+        for (NormalizedVertex vertex : objectAnnotation.getBoundingPoly().getNormalizedVerticesList()) {
+            left = Math.min(left, vertex.getX());
+            top = Math.min(top, vertex.getY());
+            right = Math.max(right, vertex.getX());
+            bottom = Math.max(bottom, vertex.getY());
+        }
+        DetectedImageObject.DetectedImageObjectBuilder detectedObject = DetectedImageObject.builder()
+                .name(objectAnnotation.getName())
+                .score(objectAnnotation.getScore());
+        if (left <= right && top <= bottom) {
+            detectedObject.boxLeft(Math.max(left, 0f))
+                    .boxTop(Math.max(top, 0f))
+                    .boxRight(Math.min(right, 1f))
+                    .boxBottom(Math.min(bottom, 1f));
+        }
+        return detectedObject.build();
+    }
+
+    private static List<String> toObjectNames(Collection<DetectedImageObject> objects) {
+        return objects.stream()
+                .map(DetectedImageObject::getName)
+                .collect(Collectors.toList());
+    }
+
+    private void saveDetectedImageObjects(Collection<DetectedImageObject> objects, String imageId) {
+        UUID imageUuid = UUID.fromString(imageId);
+        detectedImageObjectWriter.saveDetectedObjects(imageUuid, objects);
+        List<String> objectNames = toObjectNames(objects);
+        objectNameIndex.add(imageUuid, objectNames);
+        imageCache.invalidate(imageUuid);
+        imageEventService.imageObjectsDetected(imageUuid, objectNames);
+    }
+
+    // the request is sent as part of a batch with any other images being detected concurrently
+    private AnnotateImageResponse annotate(AnnotateImageRequest request) throws Exception {
+        Timer.Sample sample = imageMetrics.startTimer();
+        try {
+            return batchingImageAnnotator.annotate(request).get(visionTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            throw (ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : ex;
+        } finally {
+            imageMetrics.stopVisionLatency(sample);
         }
-        return objectNameSet;
     }
 
-    private AnnotateImageRequest buildAnnotateImageRequest(String filePath) throws IOException {
-        ByteString imgBytes = ByteString.readFrom(new FileInputStream(filePath));
+    private AnnotateImageRequest buildAnnotateImageRequest(String contentHash) throws IOException {
+        ByteString imgBytes;
+        Timer.Sample readSample = imageMetrics.startTimer();
+        try (InputStream imageContent = imageContentStore.openStream(contentHash)) {
+            imgBytes = ByteString.readFrom(imageContent);
+        }
+        imageMetrics.stopDetectionStage(readSample, ImageMetrics.DETECTION_STAGE_READ);
+        imageMetrics.visionImageBytes(ORIGINAL_STAGE, imgBytes.size());
+
+        Timer.Sample preprocessSample = imageMetrics.startTimer();
+        imgBytes = preprocess(imgBytes, contentHash);
+        imageMetrics.stopDetectionStage(preprocessSample, ImageMetrics.DETECTION_STAGE_PREPROCESS);
+        imageMetrics.visionImageBytes(SENT_STAGE, imgBytes.size());
+
         Image img = Image.newBuilder().setContent(imgBytes).build();
         return AnnotateImageRequest.newBuilder()
                         .addFeatures(Feature.newBuilder().setType(Feature.Type.OBJECT_LOCALIZATION))
                         .setImage(img)
                         .build();
     }
+
+    // Object localization works as well on ~1024px images as on full size photos, so images larger than
+    // vision.preprocess.max-dimension are downscaled and re-encoded (which also drops their metadata) before
+    // they're sent. Small files are sent as is without being decoded, as are formats ImageIO can't read.
+    private ByteString preprocess(ByteString imgBytes, String contentHash) {
+        if (!preprocessEnabled || imgBytes.size() < preprocessMinBytes) {
+            return imgBytes;
+        }
+        try {
+            Optional<byte[]> downscaled = ImageScaler.downscaleToJpeg(
+                    imgBytes.newInput(), preprocessMaxDimension, preprocessJpegQuality);
+            // a re-encoded image can come out larger than a well compressed original
+            if (downscaled.isPresent() && downscaled.get().length < imgBytes.size()) {
+                return ByteString.copyFrom(downscaled.get());
+            }
+        } catch (Exception ex) {
+            log.debug("Sending original image to Vision, could not downscale content hash=" + contentHash, ex);
+        }
+        return imgBytes;
+    }
 }
@@ -0,0 +1,36 @@
+package com.johnhollandheb.api.service;
+
+import com.johnhollandheb.api.service.exception.InvalidPageRequestException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.UUID;
+
+// continuation tokens are the url-safe base64 encoding of the last image id on a page. Clients should treat
+// them as opaque so the encoding can change without breaking anyone.
+final class ImagePageCursor {
+    private static final int UUID_BYTES = 16;
+
+    private ImagePageCursor() {
+    }
+
+    static String encode(UUID lastImageId) {
+        ByteBuffer buffer = ByteBuffer.allocate(UUID_BYTES);
+        buffer.putLong(lastImageId.getMostSignificantBits());
+        buffer.putLong(lastImageId.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    static UUID decode(String cursor) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != UUID_BYTES) {
+                throw new InvalidPageRequestException("Invalid page cursor");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidPageRequestException("Invalid page cursor");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.johnhollandheb.api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.johnhollandheb.api.object.Image;
+import com.johnhollandheb.core.content.ImageContentStore;
+import com.johnhollandheb.core.content.StoredContent;
+import com.johnhollandheb.core.domain.ImageRenditionEntity;
+import com.johnhollandheb.core.domain.ImageRenditionKey;
+import com.johnhollandheb.core.domain.ImageRenditionRepository;
+import com.johnhollandheb.core.rendition.ImageScaler;
+import com.johnhollandheb.core.rendition.UnsupportedImageFormatException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Creates the thumbnail renditions (Image.THUMBNAIL_SIZES) of image content on the bounded renditionExecutor,
+// either right after upload (images.renditions.eager) or on the first request for one. Concurrent requests for
+// the same rendition share a single generation. Content that can't be decoded is remembered (content never
+// changes), so later requests fail fast instead of reading and decoding it again.
+@Component
+@Slf4j
+public class ImageRenditionService {
+    private final Map<ImageRenditionKey, CompletableFuture<ImageRenditionEntity>> renditionsInProgress =
+            new ConcurrentHashMap<>();
+    private Cache<String, Boolean> unsupportedContentHashes;
+
+    @Autowired
+    ImageRenditionRepository imageRenditionRepository;
+
+    @Autowired
+    ImageContentStore imageContentStore;
+
+    @Autowired
+    ThreadPoolTaskExecutor renditionExecutor;
+
+    @Value("${images.renditions.jpeg-quality:0.8}")
+    float jpegQuality;
+
+    @Value("${images.renditions.eager:true}")
+    boolean eager;
+
+    @Value("${images.renditions.timeout-ms:10000}")
+    long timeoutMillis;
+
+    @Value("${images.renditions.unsupported.max-entries:10000}")
+    long maxUnsupportedEntries;
+
+    @PostConstruct
+    public void init() {
+        unsupportedContentHashes = Caffeine.newBuilder()
+                .maximumSize(maxUnsupportedEntries)
+                .build();
+    }
+
+    // queues creation of all thumbnails for newly stored content; if the pool is saturated they're created on
+    // first request instead
+    public void requestRenditions(String contentHash) {
+        if (!eager || contentHash == null || isUnsupported(contentHash)) {
+            return;
+        }
+        for (Integer size : Image.THUMBNAIL_SIZES) {
+            if (!imageRenditionRepository.existsById(new ImageRenditionKey(contentHash, size))) {
+                generate(contentHash, size);
+            }
+        }
+    }
+
+    public ImageRenditionEntity getRendition(String contentHash, int size) throws Exception {
+        Optional<ImageRenditionEntity> rendition =
+                imageRenditionRepository.findById(new ImageRenditionKey(contentHash, size));
+        if (rendition.isPresent()) {
+            return rendition.get();
+        }
+        if (isUnsupported(contentHash)) {
+            throw new UnsupportedImageFormatException();
+        }
+        try {
+            return generate(contentHash, size).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            throw (ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : ex;
+        } catch (TimeoutException ex) {
+            log.warn("Timed out waiting for the " + size + "px rendition of content hash=" + contentHash);
+            throw ex;
+        }
+    }
+
+    private CompletableFuture<ImageRenditionEntity> generate(String contentHash, int size) {
+        ImageRenditionKey key = new ImageRenditionKey(contentHash, size);
+        CompletableFuture<ImageRenditionEntity> rendition = new CompletableFuture<>();
+        CompletableFuture<ImageRenditionEntity> existingRendition = renditionsInProgress.putIfAbsent(key, rendition);
+        if (existingRendition != null) {
+            return existingRendition;
+        }
+
+        try {
+            renditionExecutor.execute(() -> {
+                try {
+                    rendition.complete(createRendition(contentHash, size));
+                } catch (UnsupportedImageFormatException ex) {
+                    log.warn("Cannot create renditions of content hash=" + contentHash + ", unsupported image format");
+                    unsupportedContentHashes.put(contentHash, Boolean.TRUE);
+                    rendition.completeExceptionally(ex);
+                } catch (Exception ex) {
+                    log.error("Creating the " + size + "px rendition failed for content hash=" + contentHash, ex);
+                    rendition.completeExceptionally(ex);
+                } finally {
+                    renditionsInProgress.remove(key, rendition);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            log.warn("Rendition queue is full, rejected the " + size + "px rendition of content hash=" + contentHash);
+            renditionsInProgress.remove(key, rendition);
+            rendition.completeExceptionally(ex);
+        }
+        return rendition;
+    }
+
+    private boolean isUnsupported(String contentHash) {
+        return unsupportedContentHashes.getIfPresent(contentHash) != null;
+    }
+
+    private ImageRenditionEntity createRendition(String contentHash, int size) throws IOException {
+        byte[] jpeg;
+        try (InputStream imageContent = imageContentStore.openStream(contentHash)) {
+            jpeg = ImageScaler.scaleToJpeg(imageContent, size, jpegQuality);
+        }
+        StoredContent storedContent = imageContentStore.save(new ByteArrayInputStream(jpeg));
+        ImageRenditionEntity rendition = ImageRenditionEntity.builder()
+                .sourceHash(contentHash)
+                .size(size)
+                .renditionHash(storedContent.getContentHash())
+                .contentLength(storedContent.getContentLength())
+                .build();
+        try {
+            return imageRenditionRepository.save(rendition);
+        } catch (DataIntegrityViolationException ex) {
+            // created concurrently by another node; renditions are deterministic so either row will do
+            return rendition;
+        }
+    }
+}
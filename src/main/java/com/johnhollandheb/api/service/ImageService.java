@@ -1,40 +1,82 @@
 package com.johnhollandheb.api.service;
 
+import com.johnhollandheb.api.object.DetectionStatus;
 import com.johnhollandheb.api.object.Image;
+import com.johnhollandheb.api.object.ImageDetectionStatus;
+import com.johnhollandheb.api.object.ImageObjectCount;
+import com.johnhollandheb.api.object.ImagePage;
 import com.johnhollandheb.api.object.ImageUploadRequest;
+import com.johnhollandheb.api.object.ResourceVersion;
+import com.johnhollandheb.api.service.exception.DetectionRejectedException;
 import com.johnhollandheb.api.service.exception.GetImagesException;
-import com.johnhollandheb.api.service.exception.ImageFileSaveException;
+import com.johnhollandheb.api.service.exception.GetThumbnailException;
 import com.johnhollandheb.api.service.exception.ImageNotFoundException;
 import com.johnhollandheb.api.service.exception.ImageSaveException;
+import com.johnhollandheb.api.service.exception.ImageTooLargeException;
+import com.johnhollandheb.api.service.exception.InvalidImageQueryException;
 import com.johnhollandheb.api.service.exception.InvalidImageUploadRequestException;
+import com.johnhollandheb.api.service.exception.InvalidPageRequestException;
+import com.johnhollandheb.api.service.exception.InvalidThumbnailSizeException;
+import com.johnhollandheb.api.service.exception.LinkedImageUnavailableException;
+import com.johnhollandheb.api.service.exception.ThumbnailUnavailableException;
+import com.johnhollandheb.api.service.exception.VisionCapacityExceededException;
+import com.johnhollandheb.core.content.BoundedInputStream;
+import com.johnhollandheb.core.content.ContentTooLargeException;
+import com.johnhollandheb.core.content.ImageContent;
+import com.johnhollandheb.core.content.ImageContentStore;
+import com.johnhollandheb.core.content.LinkedImageFetchException;
+import com.johnhollandheb.core.content.LinkedImageFetcher;
+import com.johnhollandheb.core.content.StoredContent;
+import com.johnhollandheb.core.domain.ImageChangeChannel;
 import com.johnhollandheb.core.domain.ImageEntity;
-import com.johnhollandheb.core.domain.ImageObjectMapEntity;
+import com.johnhollandheb.core.domain.ImageListingVersion;
 import com.johnhollandheb.core.domain.ImageObjectMapRepository;
+import com.johnhollandheb.core.domain.ImageObjectName;
+import com.johnhollandheb.core.domain.ImageObjectRanking;
+import com.johnhollandheb.core.domain.ImageRenditionEntity;
 import com.johnhollandheb.core.domain.ImageRepository;
+import com.johnhollandheb.core.domain.ImageSummary;
+import com.johnhollandheb.core.domain.ImageVersion;
+import com.johnhollandheb.core.domain.ObjectNameDictionary;
+import com.johnhollandheb.core.index.ObjectMatchMode;
+import com.johnhollandheb.core.index.ObjectNameIndex;
+import com.johnhollandheb.core.index.PerceptualHashIndex;
+import com.johnhollandheb.core.index.SimilarImage;
+import com.johnhollandheb.core.rendition.PerceptualHash;
+import com.johnhollandheb.core.rendition.UnsupportedImageFormatException;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import javax.xml.bind.DatatypeConverter;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Component
 @Slf4j
 public class ImageService {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String THUMBNAIL_CONTENT_TYPE = "image/jpeg";
+    // keeps IN lists well under the postgres bind parameter limit
+    private static final int ID_BATCH_SIZE = 1000;
+    private static final String INLINE_SOURCE = "inline";
+    private static final String LINK_SOURCE = "link";
+    private static final String STREAM_SOURCE = "stream";
 
     @Autowired
     ImageRepository imageRepository;
@@ -45,88 +87,488 @@ public class ImageService {
     @Autowired
     ImageObjectionDetectionService imageObjectionDetectionService;
 
-    // naively not paging this request
+    @Autowired
+    ImageContentStore imageContentStore;
+
+    @Autowired
+    ObjectNameIndex objectNameIndex;
+
+    @Autowired
+    ImageDetectionJobService imageDetectionJobService;
+
+    @Autowired
+    LinkedImageFetcher linkedImageFetcher;
+
+    @Autowired
+    ImageRenditionService imageRenditionService;
+
+    @Autowired
+    ImageMetrics imageMetrics;
+
+    @Autowired
+    ImageCache imageCache;
+
+    @Autowired
+    ObjectNameDictionary objectNameDictionary;
+
+    @Autowired
+    ImageObjectRanking imageObjectRanking;
+
+    @Autowired
+    PerceptualHashIndex perceptualHashIndex;
+
+    @Autowired
+    ImageChangeChannel imageChangeChannel;
+
+    @Value("${images.upload.max-bytes:52428800}")
+    long maxUploadBytes;
+
+    @Value("${images.page.default-size:50}")
+    int defaultPageSize;
+
+    @Value("${images.page.max-size:500}")
+    int maxPageSize;
+
+    @Value("${images.similar.default-distance:10}")
+    int defaultSimilarDistance;
+
+    @Value("${images.similar.max-distance:16}")
+    int maxSimilarDistance;
+
     public List<Image> getAllImages() {
+        return getImages(null, null).getImages();
+    }
+
+    // when neither a cursor nor a limit is requested the full (blob-free) listing is returned for
+    // backwards compatibility, otherwise a single keyset page is returned
+    public ImagePage getImages(String cursor, Integer limit) {
+        Optional<Pageable> pageable = getPageable(cursor, limit);
+        Optional<UUID> after = getCursorImageId(cursor);
         try {
-            List<Image> allImages = getImageEntitiesAndConvertToImageApiObjects();
-            allImages.forEach(this::addCachedImageObjectNames);
-            return allImages;
+            List<ImageSummary> imageSummaries = after.isPresent() ?
+                    imageRepository.findSummariesAfter(after.get(), pageable.orElse(Pageable.unpaged())) :
+                    imageRepository.findSummaries(pageable.orElse(Pageable.unpaged()));
+            return toImagePage(imageSummaries, pageable);
         } catch (Exception ex) {
             log.error("An error occurred getting all images", ex);
             throw new GetImagesException(ex);
         }
+    }
 
+    // validators for GET /images/{imageId}; only the version columns are read
+    public ResourceVersion getImageVersion(String imageId) {
+        UUID imageUuid = toImageUuid(imageId);
+        Optional<ImageVersion> imageVersion = imageRepository.findVersionById(imageUuid);
+        if (imageVersion.isEmpty()) {
+            log.error("Could not find image with id=" + imageId);
+            throw new ImageNotFoundException();
+        }
+        return ResourceVersion.builder()
+                .etag("\"" + imageUuid + "-" + imageVersion.get().getVersion() + "\"")
+                .lastModified(imageVersion.get().getUpdatedAt())
+                .build();
     }
 
-    public Image getImage(String imageId) {
-        UUID imageUuid;
+    // validators for the image listings (with or without objects); any insert, update or delete of an image
+    // (including its detected objects) changes the tag. It's a single row read, so it's checked on every poll
+    public ResourceVersion getImageListingVersion() {
         try {
-            imageUuid = UUID.fromString(imageId);
-        } catch (IllegalArgumentException ex) {
-            log.error("Invalid image Id format. Expecting a UUID. ImageId=" + imageId);
+            ImageListingVersion listingVersion = imageRepository.findListingVersion();
+            return ResourceVersion.builder()
+                    .etag("\"listing-" + listingVersion.getVersion() + "\"")
+                    .lastModified(listingVersion.getUpdatedAt())
+                    .build();
+        } catch (Exception ex) {
+            log.error("An error occurred getting the image listing version", ex);
+            throw new GetImagesException(ex);
+        }
+    }
+
+    // served from the node-local ImageCache when possible
+    public Image getImage(String imageId) {
+        return imageCache.getImage(toImageUuid(imageId),
+                imageUuid -> addCachedImageObjectNames(Image.fromEntity(findImageEntity(imageId))));
+    }
+
+    public ImageContent getImageContent(String imageId) {
+        ImageEntity imageEntity = findImageEntity(imageId);
+        if (imageEntity.getContentHash() == null) {
+            log.error("No content stored for image with id=" + imageId);
             throw new ImageNotFoundException();
         }
+        return ImageContent.builder()
+                .contentHash(imageEntity.getContentHash())
+                .contentType(StringUtils.hasText(imageEntity.getImageType()) ?
+                        imageEntity.getImageType() : DEFAULT_CONTENT_TYPE)
+                .contentLength(imageEntity.getContentLength())
+                .build();
+    }
 
-        Optional<ImageEntity> imageEntity = imageRepository.findById(imageUuid);
-        if (imageEntity.isPresent()) {
-            Image image = Image.fromEntity(imageEntity.get());
-            return this.addCachedImageObjectNames(image);
-        } else {
-            log.error("Could not find image with id=" + imageId);
+    // thumbnails are JPEG renditions created on upload, or on first request if they don't exist yet
+    public ImageContent getThumbnailContent(String imageId, int size) {
+        if (!Image.THUMBNAIL_SIZES.contains(size)) {
+            throw new InvalidThumbnailSizeException("Thumbnail size must be one of " + Image.THUMBNAIL_SIZES);
+        }
+        ImageEntity imageEntity = findImageEntity(imageId);
+        if (imageEntity.getContentHash() == null) {
+            log.error("No content stored for image with id=" + imageId);
             throw new ImageNotFoundException();
         }
+        try {
+            ImageRenditionEntity rendition = imageRenditionService.getRendition(imageEntity.getContentHash(), size);
+            return ImageContent.builder()
+                    .contentHash(rendition.getRenditionHash())
+                    .contentType(THUMBNAIL_CONTENT_TYPE)
+                    .contentLength(rendition.getContentLength())
+                    .build();
+        } catch (UnsupportedImageFormatException ex) {
+            log.warn("Cannot create a thumbnail for image with id=" + imageId + ", unsupported image format");
+            throw new ThumbnailUnavailableException(ex);
+        } catch (Exception ex) {
+            log.error("An error occurred getting the " + size + "px thumbnail for image with id=" + imageId, ex);
+            throw new GetThumbnailException(ex);
+        }
+    }
+
+    public void transferImageContent(ImageContent imageContent, OutputStream outputStream) throws IOException {
+        imageContentStore.transferTo(imageContent.getContentHash(), outputStream);
     }
 
-    // naively not paging this request
     public List<Image> getImagesByObjectList(List<String> objectList) {
+        return getImagesByObjectList(objectList, ObjectMatchMode.ANY, Collections.emptyList(), null, null).getImages();
+    }
+
+    // matching image ids come from the in-memory object name index, so only the returned page is read from the
+    // database
+    public ImagePage getImagesByObjectList(List<String> objectList, ObjectMatchMode matchMode,
+                                           List<String> excludedObjectList, String cursor, Integer limit) {
+        Optional<Pageable> pageable = getPageable(cursor, limit);
+        Optional<UUID> after = getCursorImageId(cursor);
         try {
-            Set<UUID> imageIdSet = new HashSet<>();
-
-            // determine list of unique image IDs that contain at least one of the listed objects
-            objectList.forEach(objectName -> {
-                List<ImageObjectMapEntity> imageObjects = imageObjectMapRepository
-                        .findAllByObjectNameIgnoreCase(objectName.toLowerCase());
-                List<UUID> imagesIds = imageObjects.stream()
-                        .map(ImageObjectMapEntity::getImageId)
-                        .collect(Collectors.toList());
-                imageIdSet.addAll(imagesIds);
-            });
-
-            return imageIdSet.stream()
-                    .map(imageId -> imageRepository.findById(imageId))
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .map(Image::fromEntity)
-                    .map(this::addCachedImageObjectNames)
-                    .collect(Collectors.toList());
+            List<UUID> imageIds = objectNameIndex.findImageIds(objectList, matchMode, excludedObjectList,
+                    after.orElse(null), pageable.map(Pageable::getPageSize).orElse(Integer.MAX_VALUE));
+            return toImagePage(findImageSummaries(imageIds), pageable);
         } catch (Exception ex) {
             log.error("An error occurred getting images by object type", ex);
             throw new GetImagesException(ex);
         }
+    }
+
+    // The top images containing any of the objects, best detection score first. Only detections scoring at least
+    // minScore with a bounding box covering at least minBoxArea of the image (both 0-1) count; objects detected
+    // before scores were kept have none and never match.
+    public ImagePage getTopImagesByObjectList(List<String> objectList, Float minScore, Float minBoxArea,
+                                              Integer limit) {
+        float scoreThreshold = (minScore == null) ? 0f : minScore;
+        float areaThreshold = (minBoxArea == null) ? 0f : minBoxArea;
+        if (scoreThreshold < 0f || scoreThreshold > 1f || areaThreshold < 0f || areaThreshold > 1f) {
+            throw new InvalidImageQueryException("minScore and minBoxArea must be between 0 and 1");
+        }
+        int topCount = (limit == null) ? defaultPageSize : limit;
+        if (topCount < 1) {
+            throw new InvalidPageRequestException("Page limit must be greater than zero");
+        }
+        try {
+            Set<Integer> objectIds = objectList.stream()
+                    .map(objectNameDictionary::findId)
+                    .flatMap(Optional::stream)
+                    .collect(Collectors.toSet());
+            Map<UUID, Float> topImages = imageObjectRanking.findTopImages(objectIds, scoreThreshold, areaThreshold,
+                    Math.min(topCount, maxPageSize));
 
+            Map<UUID, ImageSummary> imageSummaries = findImageSummaries(new ArrayList<>(topImages.keySet()))
+                    .stream()
+                    .collect(Collectors.toMap(ImageSummary::getId, Function.identity()));
+            // ranked images deleted since the ranking query are skipped
+            List<Image> images = topImages.entrySet().stream()
+                    .filter(topImage -> imageSummaries.containsKey(topImage.getKey()))
+                    .map(topImage -> Image.fromSummary(imageSummaries.get(topImage.getKey())).toBuilder()
+                            .score(topImage.getValue())
+                            .build())
+                    .collect(Collectors.toList());
+            addCachedImageObjectNames(images);
+            return ImagePage.builder()
+                    .images(images)
+                    .build();
+        } catch (Exception ex) {
+            log.error("An error occurred getting top images by object type", ex);
+            throw new GetImagesException(ex);
+        }
+    }
+
+    // Images whose perceptual hash is within maxDistance bits of this image's, nearest first, from the in-memory
+    // PerceptualHashIndex. An image stored before hashes were computed is hashed (and indexed) here on its first
+    // query; content that can't be decoded has no hash and no similar images.
+    public List<Image> getSimilarImages(String imageId, Integer maxDistance, Integer limit) {
+        int distance = (maxDistance == null) ? defaultSimilarDistance : maxDistance;
+        if (distance < 0 || distance > maxSimilarDistance) {
+            throw new InvalidImageQueryException("maxDistance must be between 0 and " + maxSimilarDistance);
+        }
+        int count = (limit == null) ? defaultPageSize : limit;
+        if (count < 1) {
+            throw new InvalidPageRequestException("Page limit must be greater than zero");
+        }
+        ImageEntity imageEntity = findImageEntity(imageId);
+        Optional<Long> perceptualHash = Optional.ofNullable(imageEntity.getPerceptualHash());
+        if (perceptualHash.isEmpty()) {
+            perceptualHash = hashSavedImage(imageEntity);
+            if (perceptualHash.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+
+        try {
+            List<SimilarImage> similarImages = perceptualHashIndex.findSimilar(perceptualHash.get(), distance,
+                    imageEntity.getId(), Math.min(count, maxPageSize));
+            Map<UUID, ImageSummary> imageSummaries = findImageSummaries(similarImages.stream()
+                    .map(SimilarImage::getImageId)
+                    .sorted(ObjectNameIndex.POSTGRES_UUID_ORDER)
+                    .collect(Collectors.toList()))
+                    .stream()
+                    .collect(Collectors.toMap(ImageSummary::getId, Function.identity()));
+            List<Image> images = similarImages.stream()
+                    .filter(similarImage -> imageSummaries.containsKey(similarImage.getImageId()))
+                    .map(similarImage -> Image.fromSummary(imageSummaries.get(similarImage.getImageId())).toBuilder()
+                            .distance(similarImage.getDistance())
+                            .build())
+                    .collect(Collectors.toList());
+            addCachedImageObjectNames(images);
+            return images;
+        } catch (Exception ex) {
+            log.error("An error occurred getting images similar to imageId=" + imageId, ex);
+            throw new GetImagesException(ex);
+        }
+    }
+
+    // object names with the number of images they were detected in, from the in-memory object name index
+    public List<ImageObjectCount> getImageObjectCounts(String prefix, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new InvalidPageRequestException("Limit must be greater than zero");
+        }
+        return objectNameIndex.countImages(prefix, (limit == null) ? Integer.MAX_VALUE : limit)
+                .stream()
+                .map(objectNameCount -> ImageObjectCount.builder()
+                        .objectName(objectNameCount.getObjectName())
+                        .imageCount(objectNameCount.getImageCount())
+                        .build())
+                .collect(Collectors.toList());
     }
 
     public Image saveImage(ImageUploadRequest uploadRequest, String userAgent) {
+        return saveImage(uploadRequest, userAgent, false);
+    }
+
+    // with asyncDetection the image is returned as soon as it's persisted and detection is queued, see
+    // getDetectionStatus
+    public Image saveImage(ImageUploadRequest uploadRequest, String userAgent, boolean asyncDetection) {
+        ImageEntity imageEntity = prepareImage(uploadRequest, userAgent);
+        return saveImageEntity(imageEntity, uploadRequest.getDetectObjects(), asyncDetection);
+    }
+
+    // saves an image whose raw bytes are streamed in (multipart or octet-stream uploads); the request only
+    // carries the image metadata
+    public Image saveImage(ImageUploadRequest uploadRequest, InputStream imageContent, boolean asyncDetection) {
+        ImageEntity imageEntity = prepareImage(uploadRequest, imageContent);
+        return saveImageEntity(imageEntity, uploadRequest.getDetectObjects(), asyncDetection);
+    }
+
+    // validates the request and stores its image content, returning the (not yet saved) image entity
+    ImageEntity prepareImage(ImageUploadRequest uploadRequest, String userAgent) {
         validateImageUpload(uploadRequest);
-        ImageEntity imageEntity;
+        ImageEntity imageEntity = uploadRequest.toEntity();
+        if (uploadRequest.getIsLink()) {
+            storeLinkedImageContent(imageEntity, uploadRequest.getLinkUrl(), userAgent);
+        } else {
+            // the encoded data is decoded straight into the content store, then released
+            storeImageContent(imageEntity, Base64DataUri.openDecodedStream(uploadRequest.getBase64ImageData()),
+                    INLINE_SOURCE);
+            uploadRequest.setBase64ImageData(null);
+        }
+        imageEntity.setPerceptualHash(getPerceptualHash(imageEntity.getContentHash()).orElse(null));
+        return imageEntity;
+    }
+
+    ImageEntity prepareImage(ImageUploadRequest uploadRequest, InputStream imageContent) {
+        validateImageUploadMetadata(uploadRequest);
+        ImageEntity imageEntity = uploadRequest.toEntity();
+        storeImageContent(imageEntity, imageContent, STREAM_SOURCE);
+        imageEntity.setPerceptualHash(getPerceptualHash(imageEntity.getContentHash()).orElse(null));
+        return imageEntity;
+    }
+
+    // makes a newly saved image a similar image candidate, here and (through ImageChangeChannel) on other nodes
+    void indexSavedImage(ImageEntity savedImageEntity) {
+        if (savedImageEntity.getPerceptualHash() != null) {
+            perceptualHashIndex.add(savedImageEntity.getId(), savedImageEntity.getPerceptualHash());
+            imageChangeChannel.publishAdded(savedImageEntity.getId());
+        }
+    }
+
+    // the hash of content already stored for another image is reused, otherwise the stored content is decoded
+    // (subsampled, see ImageScaler) and hashed; content ImageIO can't decode has no hash
+    private Optional<Long> getPerceptualHash(String contentHash) {
+        List<Long> knownHashes = imageRepository.findPerceptualHashesByContentHash(contentHash, PageRequest.of(0, 1));
+        if (!knownHashes.isEmpty()) {
+            return Optional.of(knownHashes.get(0));
+        }
+        Timer.Sample sample = imageMetrics.startTimer();
+        try (InputStream imageContent = imageContentStore.openStream(contentHash)) {
+            return Optional.of(PerceptualHash.dHash(imageContent));
+        } catch (UnsupportedImageFormatException ex) {
+            log.debug("Not hashing content in a format ImageIO can't read, content hash=" + contentHash);
+            return Optional.empty();
+        } catch (Exception ex) {
+            log.warn("Could not compute the perceptual hash of content hash=" + contentHash, ex);
+            return Optional.empty();
+        } finally {
+            imageMetrics.stopUploadStage(sample, ImageMetrics.UPLOAD_STAGE_HASH);
+        }
+    }
+
+    private Optional<Long> hashSavedImage(ImageEntity imageEntity) {
+        if (imageEntity.getContentHash() == null) {
+            return Optional.empty();
+        }
+        Optional<Long> perceptualHash = getPerceptualHash(imageEntity.getContentHash());
+        perceptualHash.ifPresent(hash -> {
+            imageRepository.setPerceptualHash(imageEntity.getId(), hash);
+            imageEntity.setPerceptualHash(hash);
+            indexSavedImage(imageEntity);
+        });
+        return perceptualHash;
+    }
+
+    // detects objects for an already saved image, reusing the objects detected for identical content if any
+    Image detectImageObjects(Image savedImage, String contentHash) {
+        Optional<List<String>> reusedObjectNames = imageObjectionDetectionService
+                .reuseDetectedImageObjects(contentHash, savedImage.getImageId());
+        if (reusedObjectNames.isPresent()) {
+            return setDetectedObjectNames(savedImage, reusedObjectNames.get());
+        }
+        return detectAndSaveImageObjects(contentHash, savedImage);
+    }
+
+    private void storeImageContent(ImageEntity imageEntity, InputStream imageContent, String source) {
+        Timer.Sample sample = imageMetrics.startTimer();
+        try (InputStream boundedImageContent = new BoundedInputStream(imageContent, maxUploadBytes)) {
+            StoredContent storedContent = imageContentStore.save(boundedImageContent);
+            imageMetrics.stopUploadStage(sample, ImageMetrics.UPLOAD_STAGE_STORE);
+            imageMetrics.imageUploaded(source, storedContent.getContentLength());
+            imageEntity.setContentHash(storedContent.getContentHash());
+            imageEntity.setContentLength(storedContent.getContentLength());
+        } catch (ContentTooLargeException ex) {
+            log.error("Image upload exceeds the maximum size of " + maxUploadBytes + " bytes");
+            throw new ImageTooLargeException(ex);
+        } catch (Exception ex) {
+            log.error("An error occurred storing image content", ex);
+            throw new ImageSaveException(ex);
+        }
+    }
+
+    private void storeLinkedImageContent(ImageEntity imageEntity, String linkUrl, String userAgent) {
+        Timer.Sample sample = imageMetrics.startTimer();
         try {
-            imageEntity = uploadRequest.toEntity(userAgent);
+            StoredContent storedContent = linkedImageFetcher.fetch(linkUrl, userAgent);
+            imageMetrics.stopUploadStage(sample, ImageMetrics.UPLOAD_STAGE_FETCH);
+            imageMetrics.imageUploaded(LINK_SOURCE, storedContent.getContentLength());
+            imageEntity.setContentHash(storedContent.getContentHash());
+            imageEntity.setContentLength(storedContent.getContentLength());
+        } catch (ContentTooLargeException ex) {
+            log.error("Linked image exceeds the maximum size, url=" + linkUrl);
+            throw new ImageTooLargeException(ex);
+        } catch (LinkedImageFetchException ex) {
+            log.error("An error occurred fetching linked image, url=" + linkUrl, ex);
+            throw new LinkedImageUnavailableException(ex);
         } catch (Exception ex) {
+            log.error("An error occurred storing linked image content, url=" + linkUrl, ex);
             throw new ImageSaveException(ex);
         }
+    }
+
+    private Image saveImageEntity(ImageEntity imageEntity, boolean detectObjects, boolean asyncDetection) {
+        Timer.Sample persistSample = imageMetrics.startTimer();
         ImageEntity savedImageEntity = imageRepository.save(imageEntity);
+        imageMetrics.stopUploadStage(persistSample, ImageMetrics.UPLOAD_STAGE_PERSIST);
         Image savedImage = Image.fromEntity(savedImageEntity);
+        indexSavedImage(savedImageEntity);
+        imageRenditionService.requestRenditions(savedImageEntity.getContentHash());
 
-        if (uploadRequest.getDetectObjects()) {
-            return detectAndSaveImageObjects(uploadRequest, savedImage);
-        } else {
+        if (!detectObjects) {
             return savedImage;
         }
+
+        // the image is saved by now, so a detection turned away at capacity is recorded as a REJECTED job and
+        // the image returned undetected rather than failing the upload (which the client would repeat)
+        if (!asyncDetection) {
+            Timer.Sample detectSample = imageMetrics.startTimer();
+            try {
+                return detectImageObjects(savedImage, savedImageEntity.getContentHash());
+            } catch (VisionCapacityExceededException ex) {
+                log.warn("Vision is at capacity, rejected detection for imageId=" + savedImage.getImageId());
+                imageDetectionJobService.rejected(savedImageEntity.getId(), ex.getMessage());
+                return savedImage;
+            } finally {
+                imageMetrics.stopUploadStage(detectSample, ImageMetrics.UPLOAD_STAGE_DETECT);
+            }
+        }
+        // duplicate uploads reuse the objects detected for identical content instead of calling the Vision API
+        Optional<List<String>> reusedObjectNames = imageObjectionDetectionService
+                .reuseDetectedImageObjects(savedImageEntity.getContentHash(), savedImage.getImageId());
+        if (reusedObjectNames.isPresent()) {
+            return setDetectedObjectNames(savedImage, reusedObjectNames.get());
+        }
+        try {
+            imageDetectionJobService.submit(savedImageEntity.getId(), savedImageEntity.getContentHash());
+        } catch (DetectionRejectedException ex) {
+            // recorded as a REJECTED job by submit
+        }
+        return savedImage;
+    }
+
+    public ImageDetectionStatus requestDetection(String imageId) {
+        ImageEntity imageEntity = findImageEntity(imageId);
+        if (imageEntity.getContentHash() == null) {
+            log.error("No content stored for image with id=" + imageId);
+            throw new ImageNotFoundException();
+        }
+        imageDetectionJobService.submit(imageEntity.getId(), imageEntity.getContentHash());
+        return getDetectionStatus(imageEntity);
+    }
+
+    public ImageDetectionStatus getDetectionStatus(String imageId) {
+        return getDetectionStatus(findImageEntity(imageId));
+    }
+
+    private ImageDetectionStatus getDetectionStatus(ImageEntity imageEntity) {
+        ImageDetectionStatus.ImageDetectionStatusBuilder detectionStatus = ImageDetectionStatus.builder()
+                .imageId(imageEntity.getId().toString());
+        Optional<ImageDetectionJobService.DetectionJob> detectionJob =
+                imageDetectionJobService.getJob(imageEntity.getId());
+        if (detectionJob.isPresent()) {
+            return detectionStatus
+                    .status(detectionJob.get().getStatus())
+                    .error(detectionJob.get().getError())
+                    .build();
+        } else if (Boolean.TRUE.equals(imageEntity.getObjectsDetected())) {
+            Image image = addCachedImageObjectNames(Image.fromEntity(imageEntity));
+            return detectionStatus
+                    .status(DetectionStatus.DONE)
+                    .objects(image.getObjects())
+                    .build();
+        } else {
+            return detectionStatus
+                    .status(DetectionStatus.NOT_REQUESTED)
+                    .build();
+        }
+    }
+
+    private Image detectAndSaveImageObjects(String contentHash, Image savedImage) {
+        List<String> detectedObjectNames = imageObjectionDetectionService
+                .detectImageObjects(contentHash, savedImage.getImageId());
+        return setDetectedObjectNames(savedImage, detectedObjectNames);
     }
 
-    private Image detectAndSaveImageObjects(ImageUploadRequest imageUploadRequest, Image savedImage) {
-        File tempImageFile = createFileFromBase64ImageData(imageUploadRequest);
-        List<String> detectedObjectNames = imageObjectionDetectionService.detectImageObjects(tempImageFile, savedImage.getImageId());
+    private Image setDetectedObjectNames(Image savedImage, List<String> detectedObjectNames) {
         detectedObjectNames.sort(String.CASE_INSENSITIVE_ORDER);
         savedImage.setObjects(detectedObjectNames);
         savedImage.setObjectsDetected(true);
@@ -134,12 +576,7 @@ public class ImageService {
     }
 
     private void validateImageUpload(ImageUploadRequest uploadRequest) {
-        if (uploadRequest.getIsLink() == null
-                || uploadRequest.getDetectObjects() == null
-                || !StringUtils.hasText(uploadRequest.getFileName())) {
-            log.error("Image upload request missing required field. Request=" + uploadRequest);
-            throw new InvalidImageUploadRequestException("Image upload request is missing a required field.");
-        }
+        validateImageUploadMetadata(uploadRequest);
         if (uploadRequest.getIsLink() && !StringUtils.hasText(uploadRequest.getLinkUrl())) {
             log.error("Image upload request with linked image is missing the URL. Request=" + uploadRequest);
             throw new InvalidImageUploadRequestException("Image upload request is missing link URL");
@@ -150,49 +587,76 @@ public class ImageService {
         }
     }
 
-    private File createFileFromBase64ImageData(ImageUploadRequest imageUploadRequest) {
-        File file = null;
-        try {
-            String imageData = imageUploadRequest.getBase64ImageData().split(",")[1];
-            InputStream inputStream = new ByteArrayInputStream(DatatypeConverter.parseBase64Binary(imageData));
-            String prefix = "image_" + new Random().nextInt(10000) + "_";
-            file = File.createTempFile(prefix, imageUploadRequest.getFileExtension());
-            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 8 * 1024);
-            int read;
-            byte[] bytes = new byte[1000 * 1024];
-            while ((read = inputStream.read(bytes)) != -1) {
-                outputStream.write(bytes, 0, read);
-            }
-            outputStream.close();
-        } catch (Exception ex) {
-            if (file != null) {
-                file.delete();
-            }
-            log.error("createFileFromBase64ImageData", ex);
-            throw new ImageFileSaveException(ex);
+    private void validateImageUploadMetadata(ImageUploadRequest uploadRequest) {
+        if (uploadRequest.getIsLink() == null
+                || uploadRequest.getDetectObjects() == null
+                || !StringUtils.hasText(uploadRequest.getFileName())) {
+            log.error("Image upload request missing required field. Request=" + uploadRequest);
+            throw new InvalidImageUploadRequestException("Image upload request is missing a required field.");
+        }
+    }
+
+    private ImageEntity findImageEntity(String imageId) {
+        UUID imageUuid = toImageUuid(imageId);
+        Optional<ImageEntity> imageEntity = imageRepository.findById(imageUuid);
+        if (imageEntity.isPresent()) {
+            return imageEntity.get();
+        } else {
+            log.error("Could not find image with id=" + imageId);
+            throw new ImageNotFoundException();
         }
-        return file;
     }
 
-    private List<Image> getImageEntitiesAndConvertToImageApiObjects() {
+    private UUID toImageUuid(String imageId) {
         try {
-            return StreamSupport
-                    .stream(imageRepository.findAll().spliterator(), false)
-                    .map(Image::fromEntity)
-                    .collect(Collectors.toList());
-        } catch (Exception ex) {
-            log.error("An error occurred getting images from repository", ex);
-            throw ex;
+            return UUID.fromString(imageId);
+        } catch (IllegalArgumentException ex) {
+            log.error("Invalid image Id format. Expecting a UUID. ImageId=" + imageId);
+            throw new ImageNotFoundException();
         }
     }
 
+    // a page is fetched with one extra row so we know whether to hand out a continuation token
+    private Optional<Pageable> getPageable(String cursor, Integer limit) {
+        if (cursor == null && limit == null) {
+            return Optional.empty();
+        }
+        int pageSize = (limit == null) ? defaultPageSize : limit;
+        if (pageSize < 1) {
+            throw new InvalidPageRequestException("Page limit must be greater than zero");
+        }
+        return Optional.of(PageRequest.of(0, Math.min(pageSize, maxPageSize) + 1));
+    }
+
+    private Optional<UUID> getCursorImageId(String cursor) {
+        return StringUtils.hasText(cursor) ? Optional.of(ImagePageCursor.decode(cursor)) : Optional.empty();
+    }
+
+    private ImagePage toImagePage(List<ImageSummary> imageSummaries, Optional<Pageable> pageable) {
+        String nextCursor = null;
+        List<ImageSummary> pageSummaries = imageSummaries;
+        if (pageable.isPresent() && imageSummaries.size() >= pageable.get().getPageSize()) {
+            pageSummaries = imageSummaries.subList(0, pageable.get().getPageSize() - 1);
+            nextCursor = ImagePageCursor.encode(pageSummaries.get(pageSummaries.size() - 1).getId());
+        }
+
+        List<Image> images = pageSummaries.stream()
+                .map(Image::fromSummary)
+                .collect(Collectors.toList());
+        addCachedImageObjectNames(images);
+        return ImagePage.builder()
+                .images(images)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
     private Image addCachedImageObjectNames(Image image) {
         if (image.isObjectsDetected()) {
             UUID imageId = UUID.fromString(image.getImageId());
             try {
                 List<String> imageObjectList = imageObjectMapRepository.findAllByImageId(imageId)
                         .stream()
-                        .map(ImageObjectMapEntity::getObjectName)
+                        .map(ImageObjectName::getObjectName)
                         .collect(Collectors.toList());
                 image.setObjects(imageObjectList);
                 return image;
@@ -203,4 +667,46 @@ public class ImageService {
         }
         return image;
     }
+
+    // image ids are expected in postgres uuid order; batches are queried in order so the result stays sorted
+    private List<ImageSummary> findImageSummaries(List<UUID> imageIds) {
+        List<ImageSummary> imageSummaries = new ArrayList<>(imageIds.size());
+        for (int i = 0; i < imageIds.size(); i += ID_BATCH_SIZE) {
+            List<UUID> batch = imageIds.subList(i, Math.min(i + ID_BATCH_SIZE, imageIds.size()));
+            imageSummaries.addAll(imageRepository.findSummariesByIdIn(batch));
+        }
+        return imageSummaries;
+    }
+
+    // object names come from the ImageCache, and those that aren't cached are loaded with one query per
+    // ID_BATCH_SIZE images rather than one query per image
+    private void addCachedImageObjectNames(List<Image> images) {
+        Map<UUID, Image> detectedImages = images.stream()
+                .filter(Image::isObjectsDetected)
+                .collect(Collectors.toMap(image -> UUID.fromString(image.getImageId()), Function.identity()));
+        if (detectedImages.isEmpty()) {
+            return;
+        }
+
+        try {
+            imageCache.getObjectNames(detectedImages.keySet(), this::findObjectNames)
+                    .forEach((imageId, objectNames) -> detectedImages.get(imageId).setObjects(objectNames));
+        } catch (Exception ex) {
+            log.error("An error occurred getting cached objects for " + detectedImages.size() + " images", ex);
+            throw ex;
+        }
+    }
+
+    // every requested image gets an entry, so images without objects are cached too
+    private Map<UUID, List<String>> findObjectNames(Set<UUID> imageIds) {
+        Map<UUID, List<String>> objectNames = new HashMap<>();
+        imageIds.forEach(imageId -> objectNames.put(imageId, new ArrayList<>()));
+        List<UUID> imageIdList = new ArrayList<>(imageIds);
+        for (int i = 0; i < imageIdList.size(); i += ID_BATCH_SIZE) {
+            List<UUID> batch = imageIdList.subList(i, Math.min(i + ID_BATCH_SIZE, imageIdList.size()));
+            imageObjectMapRepository.findAllByImageIdIn(batch).forEach(imageObject ->
+                    objectNames.get(imageObject.getImageId()).add(imageObject.getObjectName()));
+        }
+        return objectNames;
+    }
 }
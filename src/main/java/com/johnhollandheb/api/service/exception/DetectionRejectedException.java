@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.service.exception;
+
+public class DetectionRejectedException extends RuntimeException {
+    private static final String MESSAGE = "Object detection is at capacity, please retry detection for image ";
+
+    public DetectionRejectedException(String imageId, Exception ex) {
+        super(MESSAGE + imageId, ex);
+    }
+}
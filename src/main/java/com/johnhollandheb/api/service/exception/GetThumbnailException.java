@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.service.exception;
+
+public class GetThumbnailException extends RuntimeException {
+    private static final String MESSAGE = "An unexpected error occurred retrieving the image thumbnail";
+
+    public GetThumbnailException(Exception ex) {
+        super(MESSAGE, ex);
+    }
+}
@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.service.exception;
+
+public class ImageTooLargeException extends RuntimeException {
+    private static final String MESSAGE = "The uploaded image exceeds the maximum allowed size.";
+
+    public ImageTooLargeException(Exception ex) {
+        super(MESSAGE, ex);
+    }
+}
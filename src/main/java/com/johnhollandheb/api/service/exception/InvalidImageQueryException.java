@@ -0,0 +1,7 @@
+package com.johnhollandheb.api.service.exception;
+
+public class InvalidImageQueryException extends RuntimeException {
+    public InvalidImageQueryException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.johnhollandheb.api.service.exception;
+
+public class InvalidThumbnailSizeException extends RuntimeException {
+    public InvalidThumbnailSizeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.service.exception;
+
+public class LinkedImageUnavailableException extends RuntimeException {
+    private static final String MESSAGE = "The linked image could not be fetched.";
+
+    public LinkedImageUnavailableException(Exception ex) {
+        super(MESSAGE, ex);
+    }
+}
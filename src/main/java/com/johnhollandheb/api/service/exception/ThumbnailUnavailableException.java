@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.service.exception;
+
+public class ThumbnailUnavailableException extends RuntimeException {
+    private static final String MESSAGE = "A thumbnail could not be created for the image.";
+
+    public ThumbnailUnavailableException(Exception ex) {
+        super(MESSAGE, ex);
+    }
+}
@@ -0,0 +1,7 @@
+package com.johnhollandheb.api.service.exception;
+
+public class TooManySubscribersException extends RuntimeException {
+    public TooManySubscribersException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.service.exception;
+
+public class VisionAnnotationException extends RuntimeException {
+    private static final String MESSAGE = "The Vision API could not annotate the image: ";
+
+    public VisionAnnotationException(String statusMessage) {
+        super(MESSAGE + statusMessage);
+    }
+}
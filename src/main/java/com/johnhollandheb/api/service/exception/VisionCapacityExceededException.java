@@ -0,0 +1,9 @@
+package com.johnhollandheb.api.service.exception;
+
+public class VisionCapacityExceededException extends RuntimeException {
+    private static final String MESSAGE = "Object detection is at capacity, please try again later";
+
+    public VisionCapacityExceededException() {
+        super(MESSAGE);
+    }
+}
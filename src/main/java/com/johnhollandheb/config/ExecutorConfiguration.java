@@ -0,0 +1,110 @@
+package com.johnhollandheb.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExecutorConfiguration {
+
+    // with threads.virtual.enabled the blocking (jdbc, Vision, http) pools run on virtual threads; their sizes
+    // still cap how much work reaches the database and the Vision API. The CPU bound rendition pool, the
+    // vision pool (one thread per in-flight call) and the event writer pool stay on platform threads.
+    @Value("${threads.virtual.enabled:false}")
+    boolean virtualThreads;
+
+    // declaring our own executors switches off spring boot's default one, which spring mvc uses for async
+    // (e.g. streaming) responses, so it's declared here the same way boot would
+    @Lazy
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder taskExecutorBuilder) {
+        ThreadPoolTaskExecutor executor = taskExecutorBuilder.build();
+        useVirtualThreads(executor, "task-");
+        return executor;
+    }
+
+    // Runs asynchronous object detection. Both the pool and its queue are bounded; once the queue is full new
+    // submissions are rejected rather than piling up behind a slow Vision API.
+    @Bean
+    public ThreadPoolTaskExecutor detectionExecutor(@Value("${images.detection.executor.threads:4}") int threads,
+                                                    @Value("${images.detection.executor.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("detection-");
+        useVirtualThreads(executor, "detection-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // sends batched Vision API calls, one thread per permitted in-flight call (see BatchingImageAnnotator)
+    @Bean
+    public ThreadPoolTaskExecutor visionExecutor(@Value("${vision.max-in-flight:4}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("vision-");
+        return executor;
+    }
+
+    // bulk import stages (see ImageImportService): storing item content, and object detection. The import
+    // works through its input a chunk at a time, which bounds how much is queued here.
+    @Bean
+    public ThreadPoolTaskExecutor importExecutor(@Value("${images.import.store-threads:4}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("import-");
+        useVirtualThreads(executor, "import-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor importDetectionExecutor(@Value("${images.import.detection-threads:16}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("import-detection-");
+        useVirtualThreads(executor, "import-detection-");
+        return executor;
+    }
+
+    // creates thumbnail renditions; jobs rejected by a full queue are retried on the first thumbnail request
+    @Bean
+    public ThreadPoolTaskExecutor renditionExecutor(@Value("${images.renditions.threads:2}") int threads,
+                                                    @Value("${images.renditions.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("rendition-");
+        return executor;
+    }
+
+    // Writes server-sent events to subscribers (see ImageEventService), one task per subscriber with pending
+    // events. Always platform threads: SseEmitter writes while holding its monitor, so on java 21 a write blocked
+    // on a slow client pins its carrier thread, and a few of them would stall every virtual thread in the
+    // process (the scheduler adds no carriers for pinned threads). A stalled write here only holds its own thread.
+    @Bean
+    public ThreadPoolTaskExecutor eventExecutor(@Value("${images.events.threads:4}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("image-events-");
+        return executor;
+    }
+
+    private void useVirtualThreads(ThreadPoolTaskExecutor executor, String threadNamePrefix) {
+        if (virtualThreads) {
+            executor.setThreadFactory(VirtualThreads.newThreadFactory(threadNamePrefix));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.johnhollandheb.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Opt-in (threads.virtual.enabled, java 21+): tomcat handles every request on a new virtual thread instead of
+// its bounded worker pool, so requests blocked on jdbc, Vision or a linked image fetch don't hold a platform
+// thread each. The downstream limits stay in place and are what bounds concurrency in this mode: the hikari
+// pool (spring.datasource.hikari.maximum-pool-size), vision.max-in-flight and images.link.max-per-host.
+@Configuration
+@ConditionalOnProperty(name = "threads.virtual.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        // fails startup on older jdks rather than silently running on platform threads
+        VirtualThreads.newThreadFactory("tomcat-handler-");
+        log.info("Handling requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("tomcat-handler-"));
+    }
+}
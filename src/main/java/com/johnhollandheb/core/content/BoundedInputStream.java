@@ -0,0 +1,41 @@
+package com.johnhollandheb.core.content;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// fails with ContentTooLargeException as soon as more than maxBytes have been read
+public class BoundedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long bytesRead;
+
+    public BoundedInputStream(InputStream inputStream, long maxBytes) {
+        super(inputStream);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        if (read != -1) {
+            count(1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    private void count(int read) throws ContentTooLargeException {
+        bytesRead += read;
+        if (bytesRead > maxBytes) {
+            throw new ContentTooLargeException(maxBytes);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.johnhollandheb.core.content;
+
+import java.io.IOException;
+
+public class ContentTooLargeException extends IOException {
+    public ContentTooLargeException(long maxBytes) {
+        super("Content exceeds the maximum size of " + maxBytes + " bytes");
+    }
+}
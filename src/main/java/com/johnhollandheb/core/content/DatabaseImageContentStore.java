@@ -0,0 +1,67 @@
+package com.johnhollandheb.core.content;
+
+import com.johnhollandheb.core.domain.ImageContentEntity;
+import com.johnhollandheb.core.domain.ImageContentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// stores image bytes in the image_content bytea table
+@Component
+@ConditionalOnProperty(name = "images.content.store", havingValue = "database", matchIfMissing = true)
+public class DatabaseImageContentStore implements ImageContentStore {
+    private static final String INSERT_CONTENT =
+            "insert into image_content (content_hash, data) values (?, ?) on conflict do nothing";
+
+    @Autowired
+    ImageContentRepository imageContentRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    // the content hash is the primary key, so content is spooled to a temp file to hash it and then streamed
+    // into the insert rather than buffered in memory
+    @Override
+    public StoredContent save(InputStream content) throws IOException {
+        Path spoolFile = Files.createTempFile("image_content_", ".tmp");
+        try {
+            String contentHash = ImageContentStore.copyAndHash(content, spoolFile);
+            long contentLength = Files.size(spoolFile);
+            if (!imageContentRepository.existsById(contentHash)) {
+                try (InputStream spooledContent = Files.newInputStream(spoolFile)) {
+                    jdbcTemplate.update(INSERT_CONTENT, statement -> {
+                        statement.setString(1, contentHash);
+                        statement.setBinaryStream(2, spooledContent, contentLength);
+                    });
+                }
+            }
+            return new StoredContent(contentHash, contentLength);
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+    @Override
+    public InputStream openStream(String contentHash) throws IOException {
+        return new ByteArrayInputStream(findContent(contentHash));
+    }
+
+    @Override
+    public void transferTo(String contentHash, OutputStream outputStream) throws IOException {
+        outputStream.write(findContent(contentHash));
+    }
+
+    private byte[] findContent(String contentHash) throws ImageContentNotFoundException {
+        return imageContentRepository.findById(contentHash)
+                .map(ImageContentEntity::getData)
+                .orElseThrow(() -> new ImageContentNotFoundException(contentHash));
+    }
+}
@@ -0,0 +1,95 @@
+package com.johnhollandheb.core.content;
+
+import com.johnhollandheb.core.domain.ImageContentEntity;
+import com.johnhollandheb.core.domain.ImageContentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+// Stores image bytes on the local filesystem as <root>/<first 2 hash chars>/<next 2 hash chars>/<hash>.
+// Content migrated from the old image_data column lives in the image_content table, so reads fall back to it
+// when no file exists for a hash.
+@Component
+@ConditionalOnProperty(name = "images.content.store", havingValue = "filesystem")
+@Slf4j
+public class FileSystemImageContentStore implements ImageContentStore {
+    private final Path root;
+    private final ImageContentRepository migratedContentRepository;
+
+    public FileSystemImageContentStore(@Value("${images.content.filesystem.root}") String root,
+                                       ImageContentRepository migratedContentRepository) {
+        this.root = Paths.get(root);
+        this.migratedContentRepository = migratedContentRepository;
+    }
+
+    // content is written to a temp file (hashing it on the way) and then moved into place, so readers never
+    // observe a partially written file
+    @Override
+    public StoredContent save(InputStream content) throws IOException {
+        Files.createDirectories(root);
+        Path tempFile = Files.createTempFile(root, "upload_", ".tmp");
+        try {
+            String contentHash = ImageContentStore.copyAndHash(content, tempFile);
+            long contentLength = Files.size(tempFile);
+            Path path = getPath(contentHash);
+            if (!Files.exists(path)) {
+                Files.createDirectories(path.getParent());
+                try {
+                    Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException ex) {
+                    log.debug("Image content was stored concurrently, hash=" + contentHash);
+                }
+            }
+            return new StoredContent(contentHash, contentLength);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public InputStream openStream(String contentHash) throws IOException {
+        Path path = getPath(contentHash);
+        if (Files.exists(path)) {
+            return Files.newInputStream(path);
+        }
+        return new ByteArrayInputStream(findMigratedContent(contentHash));
+    }
+
+    // streamed through a small buffer, so the image is never held in memory as a whole. This is a plain copy,
+    // not zero-copy: the servlet output stream can only be written from the heap.
+    @Override
+    public void transferTo(String contentHash, OutputStream outputStream) throws IOException {
+        Path path = getPath(contentHash);
+        if (!Files.exists(path)) {
+            outputStream.write(findMigratedContent(contentHash));
+            return;
+        }
+        Files.copy(path, outputStream);
+    }
+
+    Path getPath(String contentHash) {
+        return root.resolve(contentHash.substring(0, 2))
+                .resolve(contentHash.substring(2, 4))
+                .resolve(contentHash);
+    }
+
+    private byte[] findMigratedContent(String contentHash) throws ImageContentNotFoundException {
+        Optional<ImageContentEntity> migratedContent = (migratedContentRepository != null) ?
+                migratedContentRepository.findById(contentHash) : Optional.empty();
+        return migratedContent
+                .map(ImageContentEntity::getData)
+                .orElseThrow(() -> new ImageContentNotFoundException(contentHash));
+    }
+}
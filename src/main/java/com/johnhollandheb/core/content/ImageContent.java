@@ -0,0 +1,14 @@
+package com.johnhollandheb.core.content;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class ImageContent {
+    private String contentHash;
+    private String contentType;
+    private Long contentLength;
+}
@@ -0,0 +1,9 @@
+package com.johnhollandheb.core.content;
+
+import java.io.IOException;
+
+public class ImageContentNotFoundException extends IOException {
+    public ImageContentNotFoundException(String contentHash) {
+        super("No stored image content for hash " + contentHash);
+    }
+}
@@ -0,0 +1,30 @@
+package com.johnhollandheb.core.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+// Raw image bytes are stored outside of the image table, addressed by their sha-256 content hash. The
+// implementation is chosen with the images.content.store property (database or filesystem).
+public interface ImageContentStore {
+
+    // Stores the content unless identical content is already present. The stream is consumed (but not closed)
+    // without holding the whole image in memory.
+    StoredContent save(InputStream content) throws IOException;
+
+    InputStream openStream(String contentHash) throws IOException;
+
+    void transferTo(String contentHash, OutputStream outputStream) throws IOException;
+
+    // copies the stream to a file, hashing it on the way, and returns the hash
+    static String copyAndHash(InputStream content, Path file) throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        Files.copy(new DigestInputStream(content, digest), file, StandardCopyOption.REPLACE_EXISTING);
+        return ContentHash.toHex(digest.digest());
+    }
+}
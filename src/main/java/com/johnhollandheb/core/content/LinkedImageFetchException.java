@@ -0,0 +1,13 @@
+package com.johnhollandheb.core.content;
+
+import java.io.IOException;
+
+public class LinkedImageFetchException extends IOException {
+    public LinkedImageFetchException(String message) {
+        super(message);
+    }
+
+    public LinkedImageFetchException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,212 @@
+package com.johnhollandheb.core.content;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fetches linked images into the content store. Every fetch has a connect timeout and an overall deadline, the
+// body is spooled to disk on the http client's threads and cut off at maxBytes, and each remote host gets a
+// limited number of concurrent fetches so one slow host can't hold every request thread. Responses carrying an
+// ETag or Last-Modified header are remembered by url and revalidated with a conditional request, so an
+// unchanged image is not downloaded (or stored) again.
+@Component
+@Slf4j
+public class LinkedImageFetcher {
+    private static final String DEFAULT_USER_AGENT = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/100.0.4896.127 Safari/537.36";
+
+    private final ImageContentStore imageContentStore;
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final long maxBytes;
+    private final int maxPerHost;
+    private final long maxPerHostWaitMs;
+    // weak values: every fetch holding or waiting for a permit references its host's semaphore, so it's only
+    // collected once the host is idle, rather than one staying behind for every host ever linked
+    private final Cache<String, Semaphore> permitsByHost = Caffeine.newBuilder().weakValues().build();
+    private final Lock cacheLock = new ReentrantLock();
+    private final Map<String, CachedLink> cachedLinksByUrl;
+
+    public LinkedImageFetcher(ImageContentStore imageContentStore,
+                              @Value("${images.link.connect-timeout-ms:5000}") long connectTimeoutMs,
+                              @Value("${images.link.read-timeout-ms:30000}") long readTimeoutMs,
+                              @Value("${images.link.max-bytes:52428800}") long maxBytes,
+                              @Value("${images.link.max-per-host:4}") int maxPerHost,
+                              @Value("${images.link.max-per-host-wait-ms:1000}") long maxPerHostWaitMs,
+                              @Value("${images.link.cache.max-entries:1000}") int maxCacheEntries) {
+        this.imageContentStore = imageContentStore;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.maxBytes = maxBytes;
+        this.maxPerHost = maxPerHost;
+        this.maxPerHostWaitMs = maxPerHostWaitMs;
+        this.cachedLinksByUrl = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLink> eldest) {
+                return size() > maxCacheEntries;
+            }
+        };
+    }
+
+    public StoredContent fetch(String url, String userAgent) throws IOException {
+        URI uri = toUri(url);
+        Semaphore hostPermits = permitsByHost.get(uri.getHost().toLowerCase(Locale.ROOT), host -> new Semaphore(maxPerHost));
+        try {
+            if (!hostPermits.tryAcquire(maxPerHostWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new LinkedImageFetchException("Too many concurrent fetches from " + uri.getHost());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LinkedImageFetchException("Interrupted waiting to fetch " + url, ex);
+        }
+        try {
+            return fetchWithPermit(url, uri, userAgent);
+        } finally {
+            hostPermits.release();
+        }
+    }
+
+    private StoredContent fetchWithPermit(String url, URI uri, String userAgent) throws IOException {
+        Optional<CachedLink> cachedLink = getCachedLink(url);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(readTimeout)
+                .header("User-Agent", StringUtils.hasText(userAgent) ? userAgent : DEFAULT_USER_AGENT)
+                .GET();
+        cachedLink.ifPresent(link -> {
+            if (link.etag != null) {
+                request.header("If-None-Match", link.etag);
+            }
+            if (link.lastModified != null) {
+                request.header("If-Modified-Since", link.lastModified);
+            }
+        });
+
+        Path spoolFile = Files.createTempFile("linked_image_", ".tmp");
+        try {
+            HttpResponse<Path> response = send(request.build(), spoolFile);
+            if (response.statusCode() == 304 && cachedLink.isPresent()) {
+                log.debug("Linked image not modified, url=" + url);
+                return cachedLink.get().storedContent;
+            }
+            if (response.statusCode() != 200) {
+                throw new LinkedImageFetchException("Unexpected status " + response.statusCode() + " fetching " + url);
+            }
+
+            StoredContent storedContent;
+            try (InputStream content = Files.newInputStream(response.body())) {
+                storedContent = imageContentStore.save(content);
+            }
+            Optional<String> etag = response.headers().firstValue("ETag");
+            Optional<String> lastModified = response.headers().firstValue("Last-Modified");
+            if (etag.isPresent() || lastModified.isPresent()) {
+                putCachedLink(url, new CachedLink(etag.orElse(null), lastModified.orElse(null), storedContent));
+            }
+            return storedContent;
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
+
+    // the request timeout only covers waiting for the response headers, so the whole exchange (including the
+    // body) is bounded by waiting on the future and cancelling the body subscriber when the deadline passes
+    private HttpResponse<Path> send(HttpRequest request, Path spoolFile) throws IOException {
+        AtomicReference<SpoolingBodySubscriber> bodySubscriber = new AtomicReference<>();
+        HttpResponse.BodyHandler<Path> bodyHandler = responseInfo -> {
+            if (responseInfo.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            long declaredLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1);
+            bodySubscriber.set(new SpoolingBodySubscriber(spoolFile, maxBytes, declaredLength));
+            return bodySubscriber.get();
+        };
+        CompletableFuture<HttpResponse<Path>> response = httpClient.sendAsync(request, bodyHandler);
+
+        try {
+            return response.get(readTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            LinkedImageFetchException timeout = new LinkedImageFetchException("Timed out fetching " + request.uri(), ex);
+            if (bodySubscriber.get() != null) {
+                bodySubscriber.get().cancel(timeout);
+            }
+            response.cancel(true);
+            throw timeout;
+        } catch (InterruptedException ex) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LinkedImageFetchException("Interrupted fetching " + request.uri(), ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ContentTooLargeException) {
+                throw (ContentTooLargeException) ex.getCause();
+            }
+            throw new LinkedImageFetchException("Failed fetching " + request.uri(), ex.getCause());
+        }
+    }
+
+    private URI toUri(String url) throws LinkedImageFetchException {
+        try {
+            URI uri = new URI(url);
+            boolean httpScheme = "http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+            if (!httpScheme || uri.getHost() == null) {
+                throw new LinkedImageFetchException("Only http(s) image links are supported: " + url);
+            }
+            return uri;
+        } catch (URISyntaxException ex) {
+            throw new LinkedImageFetchException("Invalid image link: " + url, ex);
+        }
+    }
+
+    private Optional<CachedLink> getCachedLink(String url) {
+        cacheLock.lock();
+        try {
+            return Optional.ofNullable(cachedLinksByUrl.get(url));
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private void putCachedLink(String url, CachedLink cachedLink) {
+        cacheLock.lock();
+        try {
+            cachedLinksByUrl.put(url, cachedLink);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    // validators from the last 200 response for a url, and where its body was stored
+    @AllArgsConstructor
+    private static class CachedLink {
+        private final String etag;
+        private final String lastModified;
+        private final StoredContent storedContent;
+    }
+}
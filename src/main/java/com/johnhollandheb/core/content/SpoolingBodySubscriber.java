@@ -0,0 +1,142 @@
+package com.johnhollandheb.core.content;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Writes a response body to a spool file as it arrives on the http client's threads, cancelling the exchange as
+// soon as the body (declared or actual) exceeds maxBytes. cancel() may be called from any thread, e.g. when the
+// caller's deadline passes.
+class SpoolingBodySubscriber implements HttpResponse.BodySubscriber<Path> {
+    private final CompletableFuture<Path> body = new CompletableFuture<>();
+    private final Lock lock = new ReentrantLock();
+    private final Path spoolFile;
+    private final long maxBytes;
+    private final long declaredLength;
+    private Flow.Subscription subscription;
+    private FileChannel channel;
+    private long bytesWritten;
+
+    SpoolingBodySubscriber(Path spoolFile, long maxBytes, long declaredLength) {
+        this.spoolFile = spoolFile;
+        this.maxBytes = maxBytes;
+        this.declaredLength = declaredLength;
+    }
+
+    @Override
+    public CompletionStage<Path> getBody() {
+        return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        lock.lock();
+        try {
+            this.subscription = subscription;
+            if (declaredLength > maxBytes) {
+                fail(new ContentTooLargeException(maxBytes));
+                return;
+            }
+            channel = FileChannel.open(spoolFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException ex) {
+            fail(ex);
+            return;
+        } finally {
+            lock.unlock();
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        lock.lock();
+        try {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                bytesWritten += buffer.remaining();
+                if (bytesWritten > maxBytes) {
+                    fail(new ContentTooLargeException(maxBytes));
+                    return;
+                }
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException ex) {
+            fail(ex);
+            return;
+        } finally {
+            lock.unlock();
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        lock.lock();
+        try {
+            closeChannel();
+            body.completeExceptionally(throwable);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        lock.lock();
+        try {
+            if (body.isDone()) {
+                return;
+            }
+            channel.close();
+            body.complete(spoolFile);
+        } catch (IOException ex) {
+            body.completeExceptionally(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void cancel(Throwable reason) {
+        lock.lock();
+        try {
+            if (subscription != null) {
+                fail(reason);
+            } else {
+                body.completeExceptionally(reason);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // must be called while holding the lock
+    private void fail(Throwable reason) {
+        subscription.cancel();
+        closeChannel();
+        body.completeExceptionally(reason);
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the spool file is deleted by the caller regardless
+        }
+    }
+}
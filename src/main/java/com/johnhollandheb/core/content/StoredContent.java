@@ -0,0 +1,11 @@
+package com.johnhollandheb.core.content;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StoredContent {
+    private String contentHash;
+    private long contentLength;
+}
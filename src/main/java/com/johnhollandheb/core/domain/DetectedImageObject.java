@@ -0,0 +1,22 @@
+package com.johnhollandheb.core.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// an object detected in an image: its name, the detection's confidence (0-1) and its bounding box in
+// coordinates normalized to the image size (0-1). Score and box are null for objects detected before they
+// were kept.
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DetectedImageObject {
+    private String name;
+    private Float score;
+    private Float boxLeft;
+    private Float boxTop;
+    private Float boxRight;
+    private Float boxBottom;
+}
@@ -0,0 +1,95 @@
+package com.johnhollandheb.core.domain;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Persists an image's detected objects and sets its objects_detected flag in one transaction: the names are
+// resolved to ids by the ObjectNameDictionary (from memory, once a name is known) and the objects' columns are
+// bound as one array parameter each, so all of an image's objects are upserted by a single insert. The flag is
+// then set by ImageRepository.setObjectsDetected, which stays the one place completion is recorded; either all
+// of it is written or none of it is. Saving again (a re-detection) replaces the scores and boxes.
+@Component
+public class DetectedImageObjectWriter {
+    private static final String SAVE_DETECTED_OBJECTS =
+            "insert into image_objects (image_id, object_id, score, box_left, box_top, box_right, box_bottom, box_area)"
+            + " select ?, d.object_id, d.score, d.box_left, d.box_top, d.box_right, d.box_bottom,"
+            + " (d.box_right - d.box_left) * (d.box_bottom - d.box_top)"
+            + " from unnest(?::int[], ?::real[], ?::real[], ?::real[], ?::real[], ?::real[])"
+            + " as d(object_id, score, box_left, box_top, box_right, box_bottom)"
+            + " on conflict (object_id, image_id) do update set score = excluded.score, box_left = excluded.box_left,"
+            + " box_top = excluded.box_top, box_right = excluded.box_right, box_bottom = excluded.box_bottom,"
+            + " box_area = excluded.box_area";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ObjectNameDictionary objectNameDictionary;
+
+    @Autowired
+    ImageRepository imageRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    // the names are resolved first and outside the transaction, as the dictionary caches the ids it inserts
+    public void saveDetectedObjects(UUID imageId, Collection<DetectedImageObject> detectedObjects) {
+        Map<String, Integer> objectIds = objectNameDictionary.getIds(detectedObjects.stream()
+                .map(DetectedImageObject::getName)
+                .collect(Collectors.toList()));
+        // an update can't touch a row twice, so names that differ only in case are saved once
+        Map<Integer, DetectedImageObject> objectsById = new LinkedHashMap<>();
+        for (DetectedImageObject detectedObject : detectedObjects) {
+            objectsById.merge(objectIds.get(detectedObject.getName()), detectedObject, DetectedImageObjectWriter::best);
+        }
+        List<DetectedImageObject> objects = List.copyOf(objectsById.values());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            if (!objects.isEmpty()) {
+                insertDetectedObjects(imageId, objectsById.keySet(), objects);
+            }
+            imageRepository.setObjectsDetected(imageId);
+        });
+    }
+
+    private void insertDetectedObjects(UUID imageId, Collection<Integer> objectIds, List<DetectedImageObject> objects) {
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SAVE_DETECTED_OBJECTS);
+            statement.setObject(1, imageId);
+            statement.setArray(2, connection.createArrayOf("int4", objectIds.toArray()));
+            statement.setArray(3, toRealArray(connection, objects, DetectedImageObject::getScore));
+            statement.setArray(4, toRealArray(connection, objects, DetectedImageObject::getBoxLeft));
+            statement.setArray(5, toRealArray(connection, objects, DetectedImageObject::getBoxTop));
+            statement.setArray(6, toRealArray(connection, objects, DetectedImageObject::getBoxRight));
+            statement.setArray(7, toRealArray(connection, objects, DetectedImageObject::getBoxBottom));
+            return statement;
+        });
+    }
+
+    private static Array toRealArray(Connection connection, List<DetectedImageObject> objects,
+                                     Function<DetectedImageObject, Float> column) throws SQLException {
+        return connection.createArrayOf("float4", objects.stream().map(column).toArray());
+    }
+
+    private static DetectedImageObject best(DetectedImageObject first, DetectedImageObject second) {
+        if (first.getScore() == null) {
+            return second;
+        }
+        return (second.getScore() != null && second.getScore() > first.getScore()) ? second : first;
+    }
+}
@@ -0,0 +1,190 @@
+package com.johnhollandheb.core.domain;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tells the other nodes that an image changed, through postgres LISTEN/NOTIFY on the image_changed channel, so
+// node-local caches can be invalidated without extra infrastructure. Notifications are sent from this node's
+// pooled connections and received on a dedicated connection (outside the pool) by a listener thread. Postgres
+// doesn't queue notifications for a listener that isn't connected, so listeners are told to drop everything
+// whenever the connection is (re)established. New images are announced too, for the node-local indexes.
+@Component
+@Slf4j
+public class ImageChangeChannel {
+    private static final String CHANNEL = "image_changed";
+    private static final int POLL_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    private static final String ADDED = "added";
+
+    // notifications are delivered to the sending node too, which has already dealt with the change
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // bumped whenever the listener (re)connects, right before changesMissed() is called
+    private final AtomicLong connectionGeneration = new AtomicLong();
+    private Thread listenerThread;
+    private volatile boolean running;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Value("${images.cache.notify.enabled:true}")
+    boolean enabled;
+
+    @Value("${spring.datasource.url}")
+    String url;
+
+    @Value("${spring.datasource.username}")
+    String username;
+
+    @Value("${spring.datasource.password}")
+    String password;
+
+    public interface Listener {
+        // changedAt is the sending node's clock
+        void imageChanged(UUID imageId, Instant changedAt);
+
+        void changesMissed();
+
+        // a new image was saved
+        default void imageAdded(UUID imageId) {
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listen, "image-change-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // Listeners that rebuild on changesMissed() read this before a rebuild: a rebuild that started once the
+    // current connection was listening already saw everything that connection could have missed.
+    public long getConnectionGeneration() {
+        return connectionGeneration.get();
+    }
+
+    // payload: sending node, image id, epoch millis
+    public void publish(UUID imageId) {
+        notify(nodeId + "," + imageId + "," + Instant.now().toEpochMilli(), imageId);
+    }
+
+    // payload: sending node, image id, epoch millis, "added"
+    public void publishAdded(UUID imageId) {
+        notify(nodeId + "," + imageId + "," + Instant.now().toEpochMilli() + "," + ADDED, imageId);
+    }
+
+    private void notify(String payload, UUID imageId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.queryForList("select pg_notify(?, ?)", CHANNEL, payload);
+        } catch (Exception ex) {
+            // other nodes fall back to their cache ttl (and pick new images up on their next rebuild)
+            log.warn("Could not notify other nodes of a change to image with id=" + imageId, ex);
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + CHANNEL);
+                }
+                connectionGeneration.incrementAndGet();
+                for (Listener listener : listeners) {
+                    try {
+                        listener.changesMissed();
+                    } catch (RuntimeException ex) {
+                        log.error("Image change listener " + listener.getClass().getSimpleName()
+                                + " failed to handle missed changes", ex);
+                    }
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException ex) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Image change listener lost its connection, reconnecting in " + RECONNECT_DELAY_MILLIS
+                        + "ms", ex);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interruptedEx) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        String[] fields = payload.split(",");
+        boolean added = fields.length == 4 && ADDED.equals(fields[3]);
+        if ((fields.length != 3 && !added) || nodeId.equals(fields[0])) {
+            return;
+        }
+        UUID imageId;
+        Instant changedAt;
+        try {
+            imageId = UUID.fromString(fields[1]);
+            changedAt = Instant.ofEpochMilli(Long.parseLong(fields[2]));
+        } catch (IllegalArgumentException ex) {
+            log.warn("Ignoring malformed image change notification: " + payload);
+            return;
+        }
+        // a failing listener must not stop the others, or this thread, from hearing about changes
+        for (Listener listener : listeners) {
+            try {
+                if (added) {
+                    listener.imageAdded(imageId);
+                } else {
+                    listener.imageChanged(imageId, changedAt);
+                }
+            } catch (RuntimeException ex) {
+                log.error("Image change listener " + listener.getClass().getSimpleName()
+                        + " failed to handle a change to image with id=" + imageId, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.johnhollandheb.core.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity(name = "image_content")
+@Table(name = "image_content")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageContentEntity {
+    // content is addressed by its sha-256 hash, so identical images share a single row
+    @Id
+    private String contentHash;
+    private byte[] data;
+}
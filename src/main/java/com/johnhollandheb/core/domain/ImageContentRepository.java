@@ -0,0 +1,6 @@
+package com.johnhollandheb.core.domain;
+
+import org.springframework.data.repository.CrudRepository;
+
+public interface ImageContentRepository extends CrudRepository<ImageContentEntity, String> {
+}
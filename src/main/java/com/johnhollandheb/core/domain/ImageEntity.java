@@ -3,13 +3,20 @@ package com.johnhollandheb.core.domain;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.Type;
+import org.springframework.data.domain.Persistable;
 
-import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PrePersist;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 
 @Entity(name = "image")
@@ -18,15 +25,43 @@ import java.util.UUID;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-public class ImageEntity {
+public class ImageEntity implements Persistable<UUID> {
     @Id
     @Type(type="org.hibernate.type.PostgresUUIDType")
     private UUID id;
     private String label;
     private String fileName;
-    @Column(name = "image_data")
-    private String base64imageData;
+    // sha-256 of the raw image bytes, which are kept in the configured ImageContentStore
+    private String contentHash;
+    private Long contentLength;
+    // 64 bit dHash of the content (see PerceptualHash), null if it couldn't be decoded
+    private Long perceptualHash;
     private String imageType;
     private String imageUrl;
     private Boolean objectsDetected;
+    // bumped by every update, see ImageVersion
+    @Builder.Default
+    private Long version = 0L;
+    private Instant updatedAt;
+
+    // ids are assigned by us, so without this save() would merge (select, then insert) every new image and
+    // saveAll() couldn't batch the inserts
+    @Transient
+    @Builder.Default
+    @EqualsAndHashCode.Exclude
+    private boolean isNew = true;
+
+    // postgres keeps microseconds, so a saved entity equals the one loaded back
+    @PrePersist
+    void setUpdatedAt() {
+        if (updatedAt == null) {
+            updatedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        }
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
 }
@@ -0,0 +1,10 @@
+package com.johnhollandheb.core.domain;
+
+import java.time.Instant;
+
+// validators of the image listings, bumped by every statement that inserts, deletes or changes the version of images
+public interface ImageListingVersion {
+    Long getVersion();
+
+    Instant getUpdatedAt();
+}
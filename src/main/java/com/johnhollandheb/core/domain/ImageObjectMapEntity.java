@@ -12,6 +12,7 @@ import javax.persistence.IdClass;
 import javax.persistence.Table;
 import java.util.UUID;
 
+// an object detected in an image; the object's name is in the object_name dictionary, see ObjectNameDictionary
 @Entity(name = "image_objects")
 @Table(name = "image_objects")
 @Data
@@ -20,9 +21,16 @@ import java.util.UUID;
 @NoArgsConstructor
 @IdClass(ImageObjectPrimaryKey.class)
 public class ImageObjectMapEntity {
+    @Id
+    private Integer objectId;
     @Id
     @Type(type="org.hibernate.type.PostgresUUIDType")
     private UUID imageId;
-    @Id
-    private String objectName;
+    // see DetectedImageObject; box_area is (right - left) * (bottom - top)
+    private Float score;
+    private Float boxLeft;
+    private Float boxTop;
+    private Float boxRight;
+    private Float boxBottom;
+    private Float boxArea;
 }
@@ -1,12 +1,41 @@
 package com.johnhollandheb.core.domain;
 
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+// object names are read by joining the (small) object_name dictionary; lookups by image use the
+// (image_id, object_id) index and lookups by name the unique index on lower(name) and then the primary key
 public interface ImageObjectMapRepository extends CrudRepository<ImageObjectMapEntity, ImageObjectPrimaryKey> {
-    List<ImageObjectMapEntity> findAllByImageId(UUID imageId);
+    String OBJECT_NAME_SELECT = "select o.imageId as imageId, n.name as objectName from image_objects o "
+            + "join object_name n on n.id = o.objectId ";
+
+    @Query(OBJECT_NAME_SELECT + "where o.imageId = :imageId")
+    List<ImageObjectName> findAllByImageId(@Param("imageId") UUID imageId);
+
+    @Query(OBJECT_NAME_SELECT + "where o.imageId in :imageIds")
+    List<ImageObjectName> findAllByImageIdIn(@Param("imageIds") Collection<UUID> imageIds);
+
+    @Query("select new com.johnhollandheb.core.domain.DetectedImageObject(n.name, o.score, o.boxLeft, o.boxTop, "
+            + "o.boxRight, o.boxBottom) from image_objects o join object_name n on n.id = o.objectId "
+            + "where o.imageId = :imageId")
+    List<DetectedImageObject> findDetectedObjectsByImageId(@Param("imageId") UUID imageId);
+
+    @Query(OBJECT_NAME_SELECT + "where lower(n.name) = lower(:objectName)")
+    List<ImageObjectName> findAllByObjectNameIgnoreCase(@Param("objectName") String objectName);
 
-    List<ImageObjectMapEntity> findAllByObjectNameIgnoreCase(String objectName);
+    // must be consumed inside a transaction so the driver can stream rows with the fetch size instead of
+    // loading the whole table
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "10000"))
+    @Query(OBJECT_NAME_SELECT)
+    Stream<ImageObjectName> streamAllObjectNames();
 }
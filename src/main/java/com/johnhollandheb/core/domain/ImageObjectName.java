@@ -0,0 +1,10 @@
+package com.johnhollandheb.core.domain;
+
+import java.util.UUID;
+
+// read-only projection of an image_objects row with its object's name
+public interface ImageObjectName {
+    UUID getImageId();
+
+    String getObjectName();
+}
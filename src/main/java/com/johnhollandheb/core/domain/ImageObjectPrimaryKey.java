@@ -12,7 +12,7 @@ import java.util.UUID;
 @AllArgsConstructor
 @NoArgsConstructor
 public class ImageObjectPrimaryKey implements Serializable {
+    private Integer objectId;
     @Type(type="org.hibernate.type.PostgresUUIDType")
     private UUID imageId;
-    private String objectName;
 }
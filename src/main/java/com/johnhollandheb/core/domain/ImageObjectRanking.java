@@ -0,0 +1,51 @@
+package com.johnhollandheb.core.domain;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Ranks the images containing any of the given objects by their best detection score. Each object's
+// candidates are read from image_objects_object_score_idx in score order and cut off at the limit (an image in
+// the overall top k is always in the top k of the object its best score comes from), so a query reads at most
+// objects * limit index entries no matter how many images contain the objects. Rows without a score (detected
+// before scores were kept) are never returned.
+@Component
+public class ImageObjectRanking {
+    private static final String FIND_TOP_IMAGES =
+            "select image_id, max(score) as score from ("
+            + " select o.image_id, o.score from unnest(?::int[]) as q(object_id)"
+            + " cross join lateral (select image_id, score from image_objects"
+            + " where object_id = q.object_id and score >= ? and box_area >= ?"
+            + " order by score desc limit ?) o) top"
+            + " group by image_id order by score desc, image_id limit ?";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    // image ids in rank order, with their best score
+    public Map<UUID, Float> findTopImages(Collection<Integer> objectIds, float minScore, float minBoxArea,
+                                          int limit) {
+        Map<UUID, Float> topImages = new LinkedHashMap<>();
+        if (objectIds.isEmpty()) {
+            return topImages;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(FIND_TOP_IMAGES);
+            statement.setArray(1, connection.createArrayOf("int4", objectIds.toArray()));
+            statement.setFloat(2, minScore);
+            statement.setFloat(3, minBoxArea);
+            statement.setInt(4, limit);
+            statement.setInt(5, limit);
+            return statement;
+        }, resultSet -> {
+            topImages.put(resultSet.getObject("image_id", UUID.class), resultSet.getFloat("score"));
+        });
+        return topImages;
+    }
+}
@@ -0,0 +1,10 @@
+package com.johnhollandheb.core.domain;
+
+import java.util.UUID;
+
+// read-only projection of an image's id and perceptual hash
+public interface ImagePerceptualHash {
+    UUID getImageId();
+
+    Long getPerceptualHash();
+}
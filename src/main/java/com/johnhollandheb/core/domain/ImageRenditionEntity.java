@@ -0,0 +1,29 @@
+package com.johnhollandheb.core.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+
+// a downscaled copy of some image content; renditions are keyed by the source content hash so images with
+// identical content share them, and the rendition bytes themselves live in the ImageContentStore
+@Entity(name = "image_rendition")
+@Table(name = "image_rendition")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@IdClass(ImageRenditionKey.class)
+public class ImageRenditionEntity {
+    @Id
+    private String sourceHash;
+    @Id
+    private Integer size;
+    private String renditionHash;
+    private Long contentLength;
+}
@@ -0,0 +1,15 @@
+package com.johnhollandheb.core.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageRenditionKey implements Serializable {
+    private String sourceHash;
+    private Integer size;
+}
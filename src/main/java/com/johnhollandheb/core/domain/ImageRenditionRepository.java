@@ -0,0 +1,6 @@
+package com.johnhollandheb.core.domain;
+
+import org.springframework.data.repository.CrudRepository;
+
+public interface ImageRenditionRepository extends CrudRepository<ImageRenditionEntity, ImageRenditionKey> {
+}
@@ -1,17 +1,67 @@
 package com.johnhollandheb.core.domain;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface ImageRepository extends CrudRepository<ImageEntity, UUID> {
+    String SUMMARY_SELECT = "select i.id as id, i.label as label, i.fileName as fileName, i.imageType as imageType, "
+            + "i.imageUrl as imageUrl, i.objectsDetected as objectsDetected from image i ";
 
     @Transactional
     @Modifying
-    @Query("update image set objects_detected = true where id = :id")
+    @Query("update image set objects_detected = true, version = version + 1, updated_at = current_timestamp "
+            + "where id = :id")
     void setObjectsDetected(@Param(value = "id") UUID id);
+
+    @Query("select i.version as version, i.updatedAt as updatedAt from image i where i.id = :id")
+    Optional<ImageVersion> findVersionById(@Param("id") UUID id);
+
+    // the single row kept current by a trigger on image (see image_listing_version.sql)
+    @Query(value = "select version, updated_at as updatedAt from image_listing_version where id = 1",
+            nativeQuery = true)
+    ImageListingVersion findListingVersion();
+
+    Optional<ImageEntity> findFirstByContentHashAndObjectsDetectedTrue(String contentHash);
+
+    @Transactional
+    @Modifying
+    @Query("update image i set i.perceptualHash = :perceptualHash where i.id = :id")
+    void setPerceptualHash(@Param("id") UUID id, @Param("perceptualHash") Long perceptualHash);
+
+    @Query("select i.perceptualHash from image i where i.id = :id and i.perceptualHash is not null")
+    Optional<Long> findPerceptualHashById(@Param("id") UUID id);
+
+    // identical content has the same hash, so an already hashed copy saves decoding the image again
+    @Query("select i.perceptualHash from image i where i.contentHash = :contentHash and i.perceptualHash is not null")
+    List<Long> findPerceptualHashesByContentHash(@Param("contentHash") String contentHash, Pageable pageable);
+
+    // must be consumed inside a transaction so the driver can stream rows with the fetch size instead of
+    // loading the whole table
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "10000"))
+    @Query("select i.id as imageId, i.perceptualHash as perceptualHash from image i where i.perceptualHash is not null")
+    Stream<ImagePerceptualHash> streamAllPerceptualHashes();
+
+    // keyset (seek) paging is done on the primary key so no page ever requires an offset scan
+    @Query(SUMMARY_SELECT + "order by i.id")
+    List<ImageSummary> findSummaries(Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "where i.id > :after order by i.id")
+    List<ImageSummary> findSummariesAfter(@Param("after") UUID after, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "where i.id in :ids order by i.id")
+    List<ImageSummary> findSummariesByIdIn(@Param("ids") Collection<UUID> ids);
 }
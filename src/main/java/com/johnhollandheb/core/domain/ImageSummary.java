@@ -0,0 +1,18 @@
+package com.johnhollandheb.core.domain;
+
+import java.util.UUID;
+
+// projection of the image table without the image data column, used for listings
+public interface ImageSummary {
+    UUID getId();
+
+    String getLabel();
+
+    String getFileName();
+
+    String getImageType();
+
+    String getImageUrl();
+
+    Boolean getObjectsDetected();
+}
@@ -0,0 +1,10 @@
+package com.johnhollandheb.core.domain;
+
+import java.time.Instant;
+
+// projection of an image's validators, read to answer conditional requests without loading the image
+public interface ImageVersion {
+    Long getVersion();
+
+    Instant getUpdatedAt();
+}
@@ -0,0 +1,90 @@
+package com.johnhollandheb.core.domain;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Maps object names to their ids in the object_name dictionary, case insensitively. Entries are never changed or
+// removed, so every node caches the whole (small) dictionary: it's loaded at startup and names first seen by
+// another node are read on demand. Unknown names are inserted, and a name inserted concurrently by another node
+// is simply read back.
+@Component
+@Slf4j
+public class ObjectNameDictionary {
+    private static final String INSERT_NAMES =
+            "insert into object_name (name) select distinct on (lower(name)) name from unnest(?::varchar[]) as names(name)"
+            + " on conflict do nothing";
+    private static final String SELECT_IDS = "select id, lower(name) from object_name where lower(name) = any(?::varchar[])";
+
+    private final Map<String, Integer> idsByNormalizedName = new ConcurrentHashMap<>();
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void load() {
+        jdbcTemplate.query("select id, name from object_name",
+                row -> { idsByNormalizedName.put(normalize(row.getString(2)), row.getInt(1)); });
+        log.info("Loaded " + idsByNormalizedName.size() + " object names");
+    }
+
+    // ids of the given names (keyed by the names as given), adding names that aren't in the dictionary yet
+    public Map<String, Integer> getIds(Collection<String> objectNames) {
+        Set<String> missingNames = objectNames.stream()
+                .map(ObjectNameDictionary::normalize)
+                .filter(normalizedName -> !idsByNormalizedName.containsKey(normalizedName))
+                .collect(Collectors.toSet());
+        if (!missingNames.isEmpty()) {
+            List<String> newNames = objectNames.stream()
+                    .filter(objectName -> missingNames.contains(normalize(objectName)))
+                    .map(String::trim)
+                    .collect(Collectors.toList());
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT_NAMES);
+                statement.setArray(1, connection.createArrayOf("varchar", newNames.toArray()));
+                return statement;
+            });
+            readIds(missingNames);
+        }
+
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (String objectName : objectNames) {
+            ids.put(objectName, idsByNormalizedName.get(normalize(objectName)));
+        }
+        return ids;
+    }
+
+    public Optional<Integer> findId(String objectName) {
+        String normalizedName = normalize(objectName);
+        if (!idsByNormalizedName.containsKey(normalizedName)) {
+            readIds(Set.of(normalizedName));
+        }
+        return Optional.ofNullable(idsByNormalizedName.get(normalizedName));
+    }
+
+    private void readIds(Set<String> normalizedNames) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_IDS);
+            statement.setArray(1, connection.createArrayOf("varchar", normalizedNames.toArray()));
+            return statement;
+        }, row -> { idsByNormalizedName.put(row.getString(2), row.getInt(1)); });
+    }
+
+    // matches the lower(name) index; names are stored trimmed
+    private static String normalize(String objectName) {
+        return objectName.trim().toLowerCase(Locale.ROOT);
+    }
+}
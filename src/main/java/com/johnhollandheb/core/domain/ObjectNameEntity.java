@@ -0,0 +1,23 @@
+package com.johnhollandheb.core.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+// read-only mapping of the object name dictionary, so queries can join it; rows are added by ObjectNameDictionary
+@Entity(name = "object_name")
+@Table(name = "object_name")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ObjectNameEntity {
+    @Id
+    private Integer id;
+    private String name;
+}
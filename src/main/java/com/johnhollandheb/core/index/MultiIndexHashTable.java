@@ -0,0 +1,105 @@
+package com.johnhollandheb.core.index;
+
+import com.johnhollandheb.core.rendition.PerceptualHash;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+// Multi-index hashing over 64 bit perceptual hashes: each hash is split into four 16 bit substrings and every
+// substring is a key into its own table of hashes. Two hashes within distance r differ in at least one substring
+// by no more than r / 4 bits (pigeonhole), so a search only probes the keys within r / 4 bits of the query's
+// substrings (137 keys per table for r = 10) and checks the full distance of the hashes found there, instead of
+// comparing against every hash. A hash found through several tables is only reported by the first one that can
+// find it. Not thread safe.
+class MultiIndexHashTable {
+    private static final int SUBSTRINGS = 4;
+    private static final int SUBSTRING_BITS = PerceptualHash.BITS / SUBSTRINGS;
+    private static final int SUBSTRING_MASK = (1 << SUBSTRING_BITS) - 1;
+
+    // entries are numbered in insertion order; the tables hold entry numbers per substring value
+    private long[] hashes = new long[16];
+    private UUID[] imageIds = new UUID[16];
+    private int size;
+    private final int[][][] tables = new int[SUBSTRINGS][][];
+    private final int[][] tableSizes = new int[SUBSTRINGS][];
+
+    MultiIndexHashTable() {
+        for (int table = 0; table < SUBSTRINGS; table++) {
+            tables[table] = new int[1 << SUBSTRING_BITS][];
+            tableSizes[table] = new int[1 << SUBSTRING_BITS];
+        }
+    }
+
+    void add(long hash, UUID imageId) {
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            imageIds = Arrays.copyOf(imageIds, size * 2);
+        }
+        int entry = size++;
+        hashes[entry] = hash;
+        imageIds[entry] = imageId;
+        for (int table = 0; table < SUBSTRINGS; table++) {
+            int key = substring(hash, table);
+            int[] bucket = tables[table][key];
+            int bucketSize = tableSizes[table][key];
+            if (bucket == null) {
+                bucket = new int[2];
+            } else if (bucketSize == bucket.length) {
+                bucket = Arrays.copyOf(bucket, bucketSize * 2);
+            }
+            bucket[bucketSize] = entry;
+            tables[table][key] = bucket;
+            tableSizes[table][key] = bucketSize + 1;
+        }
+    }
+
+    void search(long hash, int maxDistance, List<SimilarImage> results) {
+        int maxSubstringDistance = maxDistance / SUBSTRINGS;
+        for (int table = 0; table < SUBSTRINGS; table++) {
+            probe(hash, maxDistance, maxSubstringDistance, table, substring(hash, table), 0, 0, results);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // visits every key within maxSubstringDistance bits of key, flipping bits from position fromBit upwards
+    private void probe(long hash, int maxDistance, int maxSubstringDistance, int table, int key, int fromBit,
+                       int flipped, List<SimilarImage> results) {
+        checkBucket(hash, maxDistance, maxSubstringDistance, table, key, results);
+        if (flipped == maxSubstringDistance) {
+            return;
+        }
+        for (int bit = fromBit; bit < SUBSTRING_BITS; bit++) {
+            probe(hash, maxDistance, maxSubstringDistance, table, key ^ (1 << bit), bit + 1, flipped + 1, results);
+        }
+    }
+
+    private void checkBucket(long hash, int maxDistance, int maxSubstringDistance, int table, int key,
+                             List<SimilarImage> results) {
+        int[] bucket = tables[table][key];
+        for (int i = 0, bucketSize = tableSizes[table][key]; i < bucketSize; i++) {
+            long candidate = hashes[bucket[i]];
+            int distance = PerceptualHash.distance(hash, candidate);
+            if (distance <= maxDistance && !foundInEarlierTable(hash, candidate, maxSubstringDistance, table)) {
+                results.add(new SimilarImage(imageIds[bucket[i]], distance));
+            }
+        }
+    }
+
+    private static boolean foundInEarlierTable(long hash, long candidate, int maxSubstringDistance, int table) {
+        for (int earlierTable = 0; earlierTable < table; earlierTable++) {
+            int substringDistance = Integer.bitCount(substring(hash, earlierTable) ^ substring(candidate, earlierTable));
+            if (substringDistance <= maxSubstringDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int substring(long hash, int table) {
+        return (int) (hash >>> (table * SUBSTRING_BITS)) & SUBSTRING_MASK;
+    }
+}
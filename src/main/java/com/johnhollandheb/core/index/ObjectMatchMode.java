@@ -0,0 +1,14 @@
+package com.johnhollandheb.core.index;
+
+import java.util.Locale;
+
+public enum ObjectMatchMode {
+    // images containing every listed object
+    ALL,
+    // images containing at least one of the listed objects
+    ANY;
+
+    public static ObjectMatchMode fromParameter(String match) {
+        return ObjectMatchMode.valueOf(match.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,12 @@
+package com.johnhollandheb.core.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ObjectNameCount {
+    // as first detected, e.g. "Dog" rather than the normalized "dog"
+    private String objectName;
+    private int imageCount;
+}
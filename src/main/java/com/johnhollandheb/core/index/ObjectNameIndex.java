@@ -0,0 +1,232 @@
+package com.johnhollandheb.core.index;
+
+import com.johnhollandheb.core.domain.ImageChangeChannel;
+import com.johnhollandheb.core.domain.ImageObjectMapRepository;
+import com.johnhollandheb.core.domain.ImageObjectName;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// In-memory inverted index from normalized object name to a compressed bitmap of image ordinals. Ordinals are
+// assigned in the order images are first seen and are only meaningful inside this process. The index is loaded
+// from image_objects at startup and kept current by calling add() whenever detected objects are persisted, and
+// by reloading the objects of images changed on other nodes (see ImageChangeChannel). The bitmaps' cardinalities
+// are the image counts per object name, so countImages() never reads image_objects.
+@Component
+@Slf4j
+public class ObjectNameIndex implements ImageChangeChannel.Listener {
+    // the order postgres uses for uuid columns (unsigned byte order), which keyset paging relies on
+    public static final Comparator<UUID> POSTGRES_UUID_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, RoaringBitmap> imagesByObjectName = new HashMap<>();
+    private final Map<String, String> displayNamesByObjectName = new HashMap<>();
+    private final Map<UUID, Integer> ordinalsByImageId = new HashMap<>();
+    private final List<UUID> imageIdsByOrdinal = new ArrayList<>();
+    // the change listener connection that was current when the last rebuild started (see changesMissed())
+    private volatile long rebuiltForConnection = -1;
+
+    @Autowired
+    ImageObjectMapRepository imageObjectMapRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ImageChangeChannel imageChangeChannel;
+
+    @PostConstruct
+    public void init() {
+        // listen first, so changes made while the index loads wait for it instead of being lost
+        imageChangeChannel.addListener(this);
+        rebuild();
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long connection = imageChangeChannel.getConnectionGeneration();
+        lock.writeLock().lock();
+        try {
+            imagesByObjectName.clear();
+            displayNamesByObjectName.clear();
+            ordinalsByImageId.clear();
+            imageIdsByOrdinal.clear();
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<ImageObjectName> imageObjectNames = imageObjectMapRepository.streamAllObjectNames()) {
+                    imageObjectNames.forEach(imageObjectName ->
+                            addUnderLock(imageObjectName.getImageId(), imageObjectName.getObjectName()));
+                }
+            });
+            imagesByObjectName.values().forEach(RoaringBitmap::runOptimize);
+            rebuiltForConnection = connection;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Built object name index for " + imageIdsByOrdinal.size() + " images and "
+                + imagesByObjectName.size() + " object names in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public void add(UUID imageId, Collection<String> objectNames) {
+        lock.writeLock().lock();
+        try {
+            objectNames.forEach(objectName -> addUnderLock(imageId, objectName));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void imageChanged(UUID imageId, Instant changedAt) {
+        List<String> objectNames;
+        try {
+            objectNames = imageObjectMapRepository.findAllByImageId(imageId).stream()
+                    .map(ImageObjectName::getObjectName)
+                    .collect(Collectors.toList());
+        } catch (RuntimeException ex) {
+            log.warn("Failed to load objects of changed image with id=" + imageId
+                    + ", they are missing from the object name index until it is rebuilt", ex);
+            return;
+        }
+        add(imageId, objectNames);
+    }
+
+    // A rebuild that started while the current connection was already listening has read everything that
+    // connection could have missed, which is the case for the startup rebuild unless the listener connected
+    // during it. Any later reconnect follows an outage and needs another rebuild.
+    @Override
+    public void changesMissed() {
+        if (rebuiltForConnection < imageChangeChannel.getConnectionGeneration()) {
+            rebuild();
+        }
+    }
+
+    // Image counts of the object names starting with prefix (case insensitive, all names when null), most
+    // frequent first and then by name, at most limit of them.
+    public List<ObjectNameCount> countImages(String prefix, int limit) {
+        String normalizedPrefix = (prefix != null) ? normalize(prefix) : "";
+        Comparator<ObjectNameCount> order = Comparator.comparingInt(ObjectNameCount::getImageCount).reversed()
+                .thenComparing(ObjectNameCount::getObjectName, String.CASE_INSENSITIVE_ORDER);
+        PriorityQueue<ObjectNameCount> top = new PriorityQueue<>(order.reversed());
+        lock.readLock().lock();
+        try {
+            imagesByObjectName.forEach((objectName, images) -> {
+                if (!objectName.startsWith(normalizedPrefix)) {
+                    return;
+                }
+                top.add(new ObjectNameCount(displayNamesByObjectName.get(objectName), images.getCardinality()));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<ObjectNameCount> counts = new ArrayList<>(top);
+        counts.sort(order);
+        return counts;
+    }
+
+    // Returns up to limit image ids matching the query that sort after the given image id (or from the start
+    // when after is null), in postgres uuid order. Unknown object names never touch the database: they make an
+    // ALL query empty and are ignored by ANY queries and exclusions.
+    public List<UUID> findImageIds(Collection<String> objectNames, ObjectMatchMode matchMode,
+                                   Collection<String> excludedObjectNames, UUID after, int limit) {
+        PriorityQueue<UUID> page = new PriorityQueue<>(POSTGRES_UUID_ORDER.reversed());
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matches = match(objectNames, matchMode);
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+            for (String excludedObjectName : excludedObjectNames) {
+                RoaringBitmap excluded = imagesByObjectName.get(normalize(excludedObjectName));
+                if (excluded != null) {
+                    matches.andNot(excluded);
+                }
+            }
+
+            // bounded max-heap keeps the smallest ids after the cursor without sorting every match
+            matches.forEach((int ordinal) -> {
+                UUID imageId = imageIdsByOrdinal.get(ordinal);
+                if (after != null && POSTGRES_UUID_ORDER.compare(imageId, after) <= 0) {
+                    return;
+                }
+                if (page.size() < limit) {
+                    page.add(imageId);
+                } else if (POSTGRES_UUID_ORDER.compare(imageId, page.peek()) < 0) {
+                    page.poll();
+                    page.add(imageId);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<UUID> imageIds = new ArrayList<>(page);
+        imageIds.sort(POSTGRES_UUID_ORDER);
+        return imageIds;
+    }
+
+    public static String normalize(String objectName) {
+        return objectName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // always returns a new bitmap, so the caller may modify it
+    private RoaringBitmap match(Collection<String> objectNames, ObjectMatchMode matchMode) {
+        RoaringBitmap matches = null;
+        for (String objectName : objectNames) {
+            RoaringBitmap images = imagesByObjectName.get(normalize(objectName));
+            if (images == null) {
+                if (matchMode == ObjectMatchMode.ALL) {
+                    return new RoaringBitmap();
+                }
+                continue;
+            }
+            if (matches == null) {
+                matches = images.clone();
+            } else if (matchMode == ObjectMatchMode.ALL) {
+                matches.and(images);
+            } else {
+                matches.or(images);
+            }
+        }
+        return (matches != null) ? matches : new RoaringBitmap();
+    }
+
+    private void addUnderLock(UUID imageId, String objectName) {
+        Integer ordinal = ordinalsByImageId.get(imageId);
+        if (ordinal == null) {
+            ordinal = imageIdsByOrdinal.size();
+            imageIdsByOrdinal.add(imageId);
+            ordinalsByImageId.put(imageId, ordinal);
+        }
+        String normalizedObjectName = normalize(objectName);
+        imagesByObjectName.computeIfAbsent(normalizedObjectName, name -> new RoaringBitmap()).add(ordinal);
+        displayNamesByObjectName.putIfAbsent(normalizedObjectName, objectName.trim());
+    }
+}
@@ -0,0 +1,194 @@
+package com.johnhollandheb.core.index;
+
+import com.johnhollandheb.core.domain.ImageChangeChannel;
+import com.johnhollandheb.core.domain.ImagePerceptualHash;
+import com.johnhollandheb.core.domain.ImageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// In-memory index of the images' perceptual hashes for similar image queries. Images are spread over shards by
+// id, each a MultiIndexHashTable with its own lock, so concurrent uploads rarely contend and the startup
+// rebuild (one streaming read of image.perceptual_hash) builds the shards in parallel. Kept current by calling
+// add() when an image is saved, and on other nodes through ImageChangeChannel's image added notifications.
+@Component
+@Slf4j
+public class PerceptualHashIndex implements ImageChangeChannel.Listener {
+    // taken for writing by rebuild(), so adds and searches never see a half built index
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    // the change listener connection that was current when the last rebuild started (see changesMissed())
+    private volatile long rebuiltForConnection = -1;
+    private Shard[] shards;
+
+    @Autowired
+    ImageRepository imageRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ImageChangeChannel imageChangeChannel;
+
+    @Value("${images.similar.index.shards:4}")
+    int shardCount;
+
+    @PostConstruct
+    public void init() {
+        createShards();
+        // listen first: images added elsewhere while the shards are built wait on rebuildLock instead of being lost
+        imageChangeChannel.addListener(this);
+        rebuild();
+    }
+
+    void createShards() {
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long connection = imageChangeChannel.getConnectionGeneration();
+        rebuildLock.writeLock().lock();
+        try {
+            List<List<ImagePerceptualHash>> hashesByShard = new ArrayList<>();
+            for (int i = 0; i < shards.length; i++) {
+                hashesByShard.add(new ArrayList<>());
+            }
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<ImagePerceptualHash> imageHashes = imageRepository.streamAllPerceptualHashes()) {
+                    imageHashes.forEach(imageHash -> hashesByShard.get(shardOf(imageHash.getImageId())).add(imageHash));
+                }
+            });
+            // each shard is filled by a single thread
+            IntStream.range(0, shards.length).parallel().forEach(i -> {
+                Shard shard = new Shard();
+                hashesByShard.get(i).forEach(imageHash ->
+                        shard.add(imageHash.getImageId(), imageHash.getPerceptualHash()));
+                shards[i] = shard;
+            });
+            rebuiltForConnection = connection;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        log.info("Built perceptual hash index for " + size() + " images in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public void add(UUID imageId, long perceptualHash) {
+        rebuildLock.readLock().lock();
+        try {
+            Shard shard = shards[shardOf(imageId)];
+            shard.lock.writeLock().lock();
+            try {
+                shard.add(imageId, perceptualHash);
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    // images within maxDistance bits of the hash other than excludedImageId, nearest first (then in postgres
+    // uuid order), at most limit of them
+    public List<SimilarImage> findSimilar(long perceptualHash, int maxDistance, UUID excludedImageId, int limit) {
+        List<SimilarImage> similarImages = new ArrayList<>();
+        rebuildLock.readLock().lock();
+        try {
+            for (Shard shard : shards) {
+                shard.lock.readLock().lock();
+                try {
+                    shard.hashes.search(perceptualHash, maxDistance, similarImages);
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+
+        // an image added twice (e.g. its notification racing a rebuild) is only returned once
+        Set<UUID> seenImageIds = new HashSet<>();
+        return similarImages.stream()
+                .filter(similarImage -> !similarImage.getImageId().equals(excludedImageId))
+                .filter(similarImage -> seenImageIds.add(similarImage.getImageId()))
+                .sorted(Comparator.comparingInt(SimilarImage::getDistance)
+                        .thenComparing(SimilarImage::getImageId, ObjectNameIndex.POSTGRES_UUID_ORDER))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        rebuildLock.readLock().lock();
+        try {
+            int size = 0;
+            for (Shard shard : shards) {
+                shard.lock.readLock().lock();
+                try {
+                    size += shard.hashes.size();
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+            return size;
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void imageAdded(UUID imageId) {
+        try {
+            imageRepository.findPerceptualHashById(imageId).ifPresent(perceptualHash -> add(imageId, perceptualHash));
+        } catch (Exception ex) {
+            log.warn("Could not load the perceptual hash of image with id=" + imageId, ex);
+        }
+    }
+
+    // an image's content, and so its hash, never changes
+    @Override
+    public void imageChanged(UUID imageId, Instant changedAt) {
+    }
+
+    // same as ObjectNameIndex: only a reconnect after the last rebuild started can have missed images
+    @Override
+    public void changesMissed() {
+        if (rebuiltForConnection < imageChangeChannel.getConnectionGeneration()) {
+            rebuild();
+        }
+    }
+
+    private int shardOf(UUID imageId) {
+        return Math.floorMod(imageId.hashCode(), shards.length);
+    }
+
+    private static class Shard {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final MultiIndexHashTable hashes = new MultiIndexHashTable();
+
+        void add(UUID imageId, long perceptualHash) {
+            hashes.add(perceptualHash, imageId);
+        }
+    }
+}
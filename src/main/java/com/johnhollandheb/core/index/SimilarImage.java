@@ -0,0 +1,14 @@
+package com.johnhollandheb.core.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class SimilarImage {
+    private UUID imageId;
+    // Hamming distance between the images' perceptual hashes, 0-64
+    private int distance;
+}
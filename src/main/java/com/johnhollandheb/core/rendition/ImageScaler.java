@@ -0,0 +1,104 @@
+package com.johnhollandheb.core.rendition;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Optional;
+
+// Downscales images to fit within a square box and encodes them as JPEG, for thumbnails and for images sent to
+// the Vision API. Large sources are subsampled while they're decoded (to no less than twice the target size), so
+// a 40 megapixel photo is never held in memory at full resolution; the rest of the way is scaled with bilinear
+// interpolation. Images are never upscaled.
+public final class ImageScaler {
+    private static final String JPEG_FORMAT = "jpeg";
+
+    private ImageScaler() {
+    }
+
+    public static byte[] scaleToJpeg(InputStream image, int maxSize, float quality) throws IOException {
+        return toJpeg(scale(image, maxSize), quality);
+    }
+
+    public static BufferedImage scale(InputStream image, int maxSize) throws IOException {
+        return read(image, maxSize, false).orElseThrow();
+    }
+
+    // for images larger than maxSize returns a downscaled JPEG copy (without the original's metadata), otherwise
+    // empty; the image is only fully decoded when it needs scaling
+    public static Optional<byte[]> downscaleToJpeg(InputStream image, int maxSize, float quality) throws IOException {
+        Optional<BufferedImage> scaledImage = read(image, maxSize, true);
+        return scaledImage.isPresent() ? Optional.of(toJpeg(scaledImage.get(), quality)) : Optional.empty();
+    }
+
+    private static Optional<BufferedImage> read(InputStream image, int maxSize, boolean onlyIfLarger)
+            throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(image)) {
+            Iterator<ImageReader> readers = (imageInputStream != null) ?
+                    ImageIO.getImageReaders(imageInputStream) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new UnsupportedImageFormatException();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int sourceSize = Math.max(reader.getWidth(0), reader.getHeight(0));
+                if (onlyIfLarger && sourceSize <= maxSize) {
+                    return Optional.empty();
+                }
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, sourceSize / (maxSize * 2));
+                readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return Optional.of(resize(reader.read(0, readParam), maxSize));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public static byte[] toJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(JPEG_FORMAT).next();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(jpeg)) {
+            ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            writeParam.setCompressionQuality(quality);
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+        return jpeg.toByteArray();
+    }
+
+    // always returns an opaque rgb image (jpeg has no alpha channel), transparent areas become white
+    private static BufferedImage resize(BufferedImage source, int maxSize) {
+        double scale = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+}
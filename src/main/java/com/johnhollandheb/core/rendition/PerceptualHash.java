@@ -0,0 +1,67 @@
+package com.johnhollandheb.core.rendition;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+// 64 bit difference hash (dHash): the image is shrunk to 9x8 grayscale cells and every bit records whether a
+// cell is brighter than its right neighbour. Re-encoding, resizing and small edits flip only a few bits, so
+// near-duplicates are a small Hamming distance apart (Long.bitCount(a ^ b)) while unrelated images average ~32.
+public final class PerceptualHash {
+    public static final int BITS = 64;
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+    // decoded (subsampled) to about this size first, so the final shrink averages enough source pixels
+    private static final int DECODE_SIZE = 64;
+
+    private PerceptualHash() {
+    }
+
+    public static long dHash(InputStream image) throws IOException {
+        return dHash(ImageScaler.scale(image, DECODE_SIZE));
+    }
+
+    public static long dHash(BufferedImage image) {
+        double[][] luminance = shrink(image);
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash <<= 1;
+                if (luminance[y][x] > luminance[y][x + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long hash, long otherHash) {
+        return Long.bitCount(hash ^ otherHash);
+    }
+
+    // mean luminance of each of the WIDTH x HEIGHT cells the image is divided into; averaging every pixel (rather
+    // than interpolating a few) keeps the result stable across re-encodings and resizes
+    private static double[][] shrink(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        double[][] luminance = new double[HEIGHT][WIDTH];
+        for (int cellY = 0; cellY < HEIGHT; cellY++) {
+            int top = cellY * height / HEIGHT;
+            int bottom = Math.max(top + 1, (cellY + 1) * height / HEIGHT);
+            for (int cellX = 0; cellX < WIDTH; cellX++) {
+                int left = cellX * width / WIDTH;
+                int right = Math.max(left + 1, (cellX + 1) * width / WIDTH);
+                double sum = 0;
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        int pixel = rgb[y * width + x];
+                        sum += 0.299 * ((pixel >> 16) & 0xFF) + 0.587 * ((pixel >> 8) & 0xFF) + 0.114 * (pixel & 0xFF);
+                    }
+                }
+                luminance[cellY][cellX] = sum / ((bottom - top) * (right - left));
+            }
+        }
+        return luminance;
+    }
+}
@@ -0,0 +1,9 @@
+package com.johnhollandheb.core.rendition;
+
+import java.io.IOException;
+
+public class UnsupportedImageFormatException extends IOException {
+    public UnsupportedImageFormatException() {
+        super("The image format is not supported");
+    }
+}
@@ -0,0 +1,29 @@
+--liquibase formatted sql
+
+--changeset heb:3
+create table image_content (
+    content_hash varchar(64) constraint image_content_pk primary key,
+    data bytea not null
+);
+alter table image add column content_hash varchar(64);
+alter table image add column content_length bigint;
+-- rollback alter table image drop column content_length;
+-- rollback alter table image drop column content_hash;
+-- rollback drop table image_content
+
+--changeset heb:4
+-- moves the base64 data-uri payloads of existing rows into image_content as raw bytes (requires postgres 11+ for sha256)
+insert into image_content (content_hash, data)
+select distinct encode(sha256(decoded.data), 'hex'), decoded.data
+from (select decode(split_part(image_data, ',', 2), 'base64') as data from image) decoded
+on conflict do nothing;
+update image
+set content_hash = encode(sha256(decode(split_part(image_data, ',', 2), 'base64')), 'hex'),
+    content_length = length(decode(split_part(image_data, ',', 2), 'base64'));
+-- rollback update image set content_hash = null, content_length = null;
+-- rollback delete from image_content
+
+--changeset heb:5
+alter table image drop column image_data;
+-- rollback alter table image add column image_data varchar;
+-- rollback update image set image_data = 'data:' || coalesce(image.image_type, 'application/octet-stream') || ';base64,' || replace(encode(image_content.data, 'base64'), E'\n', '') from image_content where image_content.content_hash = image.content_hash
@@ -0,0 +1,5 @@
+--liquibase formatted sql
+
+--changeset heb:6
+create index image_content_hash_idx on image (content_hash);
+-- rollback drop index image_content_hash_idx
@@ -0,0 +1,27 @@
+--liquibase formatted sql
+
+--changeset heb:12
+-- a single row validator for the image listings, bumped in the same transaction as every statement that inserts,
+-- deletes or changes the version of images, so polls read one row instead of aggregating the image table
+create table image_listing_version (
+    id int constraint image_listing_version_pk primary key check (id = 1),
+    version bigint not null,
+    updated_at timestamp with time zone not null
+);
+insert into image_listing_version (id, version, updated_at) values (1, 0, now());
+-- rollback drop table image_listing_version
+
+--changeset heb:13 splitStatements:false
+create function bump_image_listing_version() returns trigger as $$
+begin
+    update image_listing_version set version = version + 1, updated_at = now() where id = 1;
+    return null;
+end
+$$ language plpgsql;
+-- rollback drop function bump_image_listing_version()
+
+--changeset heb:14
+create trigger image_listing_version_trigger
+after insert or delete or update of version on image
+for each statement execute procedure bump_image_listing_version();
+-- rollback drop trigger image_listing_version_trigger on image
@@ -0,0 +1,20 @@
+--liquibase formatted sql
+
+--changeset heb:10
+-- confidence and normalized bounding box of each detected object (null for rows detected before they were kept);
+-- box_area is stored so the ranking index can cover it
+alter table image_objects add column score real;
+alter table image_objects add column box_left real;
+alter table image_objects add column box_top real;
+alter table image_objects add column box_right real;
+alter table image_objects add column box_bottom real;
+alter table image_objects add column box_area real;
+-- top-k images for an object by score, filtered by box area, as an index-only scan (include requires postgres 11+)
+create index image_objects_object_score_idx on image_objects (object_id, score desc) include (box_area, image_id);
+-- rollback drop index image_objects_object_score_idx;
+-- rollback alter table image_objects drop column box_area;
+-- rollback alter table image_objects drop column box_bottom;
+-- rollback alter table image_objects drop column box_right;
+-- rollback alter table image_objects drop column box_top;
+-- rollback alter table image_objects drop column box_left;
+-- rollback alter table image_objects drop column score
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+
+--changeset heb:11
+-- 64 bit difference hash (dHash) of the image content, null when the content couldn't be decoded or was stored
+-- before hashes were computed; similar image queries use an in-memory index, so the column isn't indexed
+alter table image add column perceptual_hash bigint;
+-- rollback alter table image drop column perceptual_hash
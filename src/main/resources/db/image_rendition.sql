@@ -0,0 +1,11 @@
+--liquibase formatted sql
+
+--changeset heb:7
+create table image_rendition (
+    source_hash varchar(64) not null,
+    size int not null,
+    rendition_hash varchar(64) not null,
+    content_length bigint not null,
+    PRIMARY KEY (source_hash, size)
+);
+-- rollback drop table image_rendition
@@ -0,0 +1,9 @@
+--liquibase formatted sql
+
+--changeset heb:8
+-- version is bumped by every update of an image (or its detected objects); together with updated_at it's the
+-- image's http validator, and count/sum(version)/max(updated_at) over the table is the listing's validator
+alter table image add column version bigint not null default 0;
+alter table image add column updated_at timestamp with time zone not null default now();
+-- rollback alter table image drop column updated_at;
+-- rollback alter table image drop column version
@@ -0,0 +1,34 @@
+--liquibase formatted sql
+
+--changeset heb:9
+-- object names are kept once, in a dictionary with a unique (case insensitive) index, and image_objects only
+-- holds (object_id, image_id) pairs
+create table object_name (
+    id serial constraint object_name_pk primary key,
+    name varchar not null
+);
+create unique index object_name_lower_name_idx on object_name (lower(name));
+insert into object_name (name)
+select distinct on (lower(trim(object_name))) trim(object_name)
+from image_objects
+order by lower(trim(object_name)), trim(object_name);
+
+create table image_object_id (
+    object_id int not null constraint image_objects_object_name_fk references object_name (id),
+    image_id uuid not null,
+    constraint image_objects_pk PRIMARY KEY (object_id, image_id)
+);
+insert into image_object_id (object_id, image_id)
+select distinct n.id, o.image_id
+from image_objects o
+join object_name n on lower(n.name) = lower(trim(o.object_name));
+-- the primary key serves lookups by object, this index lookups by image
+create index image_objects_image_id_idx on image_object_id (image_id, object_id);
+
+drop table image_objects;
+alter table image_object_id rename to image_objects;
+-- rollback create table image_object_name (image_id uuid not null, object_name varchar not null, PRIMARY KEY (image_id, object_name));
+-- rollback insert into image_object_name (image_id, object_name) select o.image_id, n.name from image_objects o join object_name n on n.id = o.object_id;
+-- rollback drop table image_objects;
+-- rollback alter table image_object_name rename to image_objects;
+-- rollback drop table object_name
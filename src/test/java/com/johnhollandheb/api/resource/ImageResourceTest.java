@@ -0,0 +1,131 @@
+package com.johnhollandheb.api.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.johnhollandheb.JohnhollandhebApplication;
+import com.johnhollandheb.api.object.Image;
+import com.johnhollandheb.api.service.ImageService;
+import com.johnhollandheb.core.domain.ImageObjectMapRepository;
+import com.johnhollandheb.core.domain.ImageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// the raw upload endpoints, with images.upload.max-bytes lowered so the limit is cheap to exceed
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@AutoConfigureMockMvc
+@SpringBootTest(classes= JohnhollandhebApplication.class,
+        properties = "images.upload.max-bytes=" + ImageResourceTest.MAX_UPLOAD_BYTES)
+public class ImageResourceTest {
+    static final int MAX_UPLOAD_BYTES = 4096;
+
+    @Autowired
+    ImageRepository imageRepository;
+
+    @Autowired
+    ImageObjectMapRepository imageObjectMapRepository;
+
+    @MockBean
+    ImageAnnotatorClient imageAnnotatorClient;
+
+    @Autowired
+    ImageService imageService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @BeforeEach
+    void initEach() {
+        this.imageRepository.deleteAll();
+        this.imageObjectMapRepository.deleteAll();
+    }
+
+    @Test
+    void saveImageBody_storesRequestBody_Test() throws Exception {
+        byte[] content = randomBytes(MAX_UPLOAD_BYTES);
+
+        MvcResult result = mockMvc.perform(post("/images")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .param("fileName", "image.png")
+                        .param("imageType", "image/png")
+                        .content(content))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        Image savedImage = objectMapper.readValue(result.getResponse().getContentAsString(), Image.class);
+        assertEquals("image.png", savedImage.getFileName());
+        assertEquals("image/png", imageService.getImageContent(savedImage.getImageId()).getContentType());
+        assertArrayEquals(content, storedContent(savedImage.getImageId()));
+    }
+
+    @Test
+    void saveImageFile_storesFilePart_Test() throws Exception {
+        byte[] content = randomBytes(MAX_UPLOAD_BYTES);
+
+        MvcResult result = mockMvc.perform(multipart("/images")
+                        .file(new MockMultipartFile("file", "image.png", "image/png", content))
+                        .param("label", "a label"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        Image savedImage = objectMapper.readValue(result.getResponse().getContentAsString(), Image.class);
+        assertEquals("image.png", savedImage.getFileName());
+        assertEquals("a label", savedImage.getLabel());
+        assertArrayEquals(content, storedContent(savedImage.getImageId()));
+    }
+
+    @Test
+    void saveImageBody_overMaxBytes_Test() throws Exception {
+        mockMvc.perform(post("/images")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .param("fileName", "image.png")
+                        .content(randomBytes(MAX_UPLOAD_BYTES + 1)))
+                .andExpect(status().isPayloadTooLarge());
+
+        assertEquals(0, imageRepository.count());
+    }
+
+    @Test
+    void saveImageFile_overMaxBytes_Test() throws Exception {
+        mockMvc.perform(multipart("/images")
+                        .file(new MockMultipartFile("file", "image.png", "image/png", randomBytes(MAX_UPLOAD_BYTES + 1))))
+                .andExpect(status().isPayloadTooLarge());
+
+        assertEquals(0, imageRepository.count());
+    }
+
+    private byte[] storedContent(String imageId) throws Exception {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        imageService.transferImageContent(imageService.getImageContent(imageId), content);
+        return content.toByteArray();
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,169 @@
+package com.johnhollandheb.api.service;
+
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.Image;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.google.cloud.vision.v1.LocalizedObjectAnnotation;
+import com.google.protobuf.ByteString;
+import com.google.rpc.Status;
+import com.johnhollandheb.api.service.exception.VisionAnnotationException;
+import com.johnhollandheb.api.service.exception.VisionCapacityExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchingImageAnnotatorTest {
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch batchesBlocked = new CountDownLatch(1);
+    private final CountDownLatch batchStarted = new CountDownLatch(1);
+    private volatile boolean blockBatches;
+    private ThreadPoolTaskExecutor visionExecutor;
+    private BatchingImageAnnotator batchingImageAnnotator;
+
+    @BeforeEach
+    void initEach() {
+        visionExecutor = new ThreadPoolTaskExecutor();
+        visionExecutor.setCorePoolSize(2);
+        visionExecutor.setMaxPoolSize(2);
+        visionExecutor.initialize();
+
+        // answers each request with an object named after its content, or with an error for content "bad"
+        ImageAnnotatorClient imageAnnotatorClient = mock(ImageAnnotatorClient.class);
+        when(imageAnnotatorClient.batchAnnotateImages(anyList())).thenAnswer(invocation -> {
+            List<AnnotateImageRequest> requests = invocation.getArgument(0);
+            batchSizes.add(requests.size());
+            batchStarted.countDown();
+            if (blockBatches) {
+                batchesBlocked.await();
+            }
+            BatchAnnotateImagesResponse.Builder batchResponse = BatchAnnotateImagesResponse.newBuilder();
+            for (AnnotateImageRequest request : requests) {
+                String content = request.getImage().getContent().toStringUtf8();
+                batchResponse.addResponses(content.equals("bad")
+                        ? AnnotateImageResponse.newBuilder().setError(Status.newBuilder().setMessage("bad image"))
+                        : AnnotateImageResponse.newBuilder()
+                                .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName(content)));
+            }
+            return batchResponse.build();
+        });
+
+        batchingImageAnnotator = new BatchingImageAnnotator();
+        batchingImageAnnotator.imageAnnotatorClient = imageAnnotatorClient;
+        batchingImageAnnotator.visionExecutor = visionExecutor;
+        batchingImageAnnotator.maxBatchSize = 2;
+        batchingImageAnnotator.lingerMillis = 50;
+        batchingImageAnnotator.maxInFlightBatches = 1;
+        batchingImageAnnotator.maxInFlightWaitMillis = 0;
+    }
+
+    @AfterEach
+    void cleanUp() {
+        batchesBlocked.countDown();
+        batchingImageAnnotator.stop();
+        visionExecutor.shutdown();
+    }
+
+    @Test
+    void annotate_groupsRequestsByMaxSizeTest() throws Exception {
+        batchingImageAnnotator.lingerMillis = 60000;
+        batchingImageAnnotator.maxInFlightBatches = 2;
+        batchingImageAnnotator.maxInFlightWaitMillis = 5000;
+        batchingImageAnnotator.start();
+
+        List<CompletableFuture<AnnotateImageResponse>> responses = new ArrayList<>();
+        for (String content : List.of("a", "b", "c", "d")) {
+            responses.add(batchingImageAnnotator.annotate(request(content)));
+        }
+
+        // full batches are sent without waiting out the linger
+        assertEquals(List.of("a", "b", "c", "d"), objectNames(responses));
+        assertEquals(List.of(2, 2), batchSizes);
+    }
+
+    @Test
+    void annotate_sendsPartialBatchAfterLingerTest() throws Exception {
+        batchingImageAnnotator.maxBatchSize = 16;
+        batchingImageAnnotator.start();
+
+        List<CompletableFuture<AnnotateImageResponse>> responses = new ArrayList<>();
+        for (String content : List.of("a", "b", "c")) {
+            responses.add(batchingImageAnnotator.annotate(request(content)));
+        }
+
+        assertEquals(List.of("a", "b", "c"), objectNames(responses));
+        assertEquals(List.of(3), batchSizes);
+    }
+
+    @Test
+    void annotate_failsOnlyTheImageWithAnErrorTest() throws Exception {
+        batchingImageAnnotator.start();
+
+        CompletableFuture<AnnotateImageResponse> good = batchingImageAnnotator.annotate(request("good"));
+        CompletableFuture<AnnotateImageResponse> bad = batchingImageAnnotator.annotate(request("bad"));
+
+        assertEquals(List.of("good"), objectNames(List.of(good)));
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof VisionAnnotationException);
+        assertEquals(List.of(2), batchSizes);
+    }
+
+    @Test
+    void annotate_rejectsBatchWhenInFlightCallsAreExhaustedTest() throws Exception {
+        blockBatches = true;
+        batchingImageAnnotator.maxBatchSize = 1;
+        batchingImageAnnotator.start();
+
+        CompletableFuture<AnnotateImageResponse> inFlight = batchingImageAnnotator.annotate(request("a"));
+        assertTrue(batchStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<AnnotateImageResponse> rejected = batchingImageAnnotator.annotate(request("b"));
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof VisionCapacityExceededException);
+        batchesBlocked.countDown();
+        assertEquals(List.of("a"), objectNames(List.of(inFlight)));
+    }
+
+    @Test
+    void annotate_failsBatchTheExecutorRejectsTest() {
+        visionExecutor.shutdown();
+        batchingImageAnnotator.start();
+
+        CompletableFuture<AnnotateImageResponse> response = batchingImageAnnotator.annotate(request("a"));
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof TaskRejectedException);
+    }
+
+    private AnnotateImageRequest request(String content) {
+        return AnnotateImageRequest.newBuilder()
+                .setImage(Image.newBuilder().setContent(ByteString.copyFromUtf8(content)))
+                .build();
+    }
+
+    private List<String> objectNames(List<CompletableFuture<AnnotateImageResponse>> responses) throws Exception {
+        List<String> objectNames = new ArrayList<>();
+        for (CompletableFuture<AnnotateImageResponse> response : responses) {
+            objectNames.add(response.get(5, TimeUnit.SECONDS).getLocalizedObjectAnnotations(0).getName());
+        }
+        return objectNames;
+    }
+}
@@ -0,0 +1,124 @@
+package com.johnhollandheb.api.service;
+
+import com.johnhollandheb.api.object.DetectionStatus;
+import com.johnhollandheb.api.service.exception.DetectionRejectedException;
+import com.johnhollandheb.api.service.exception.VisionCapacityExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImageDetectionJobServiceTest {
+    private final CountDownLatch detectionsBlocked = new CountDownLatch(1);
+    private ThreadPoolTaskExecutor detectionExecutor;
+    private ImageDetectionJobService imageDetectionJobService;
+
+    @BeforeEach
+    void initEach() {
+        // no queue, so every submitted detection is rejected
+        detectionExecutor = newBlockedExecutor(0);
+
+        imageDetectionJobService = new ImageDetectionJobService();
+        imageDetectionJobService.detectionExecutor = detectionExecutor;
+        imageDetectionJobService.maxFailedJobs = 2;
+        imageDetectionJobService.failedJobTtlSeconds = 60;
+        imageDetectionJobService.init();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        detectionsBlocked.countDown();
+        detectionExecutor.shutdown();
+    }
+
+    // a single thread, taken until the test ends
+    private ThreadPoolTaskExecutor newBlockedExecutor(int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.initialize();
+        executor.execute(() -> {
+            try {
+                detectionsBlocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return executor;
+    }
+
+    @Test
+    void submit_recordsRejectedJobTest() {
+        UUID imageId = UUID.randomUUID();
+
+        assertThrows(DetectionRejectedException.class, () -> imageDetectionJobService.submit(imageId, "hash"));
+
+        assertEquals(DetectionStatus.REJECTED, imageDetectionJobService.getJob(imageId).get().getStatus());
+    }
+
+    @Test
+    void submit_returnsPendingJobInsteadOfQueueingAgainTest() {
+        ThreadPoolTaskExecutor queueingExecutor = newBlockedExecutor(10);
+        imageDetectionJobService.detectionExecutor = queueingExecutor;
+        UUID imageId = UUID.randomUUID();
+        try {
+            ImageDetectionJobService.DetectionJob job = imageDetectionJobService.submit(imageId, "hash");
+
+            assertSame(job, imageDetectionJobService.submit(imageId, "hash"));
+            assertEquals(DetectionStatus.PENDING, imageDetectionJobService.getJob(imageId).get().getStatus());
+            assertEquals(1, queueingExecutor.getThreadPoolExecutor().getQueue().size());
+        } finally {
+            queueingExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void submit_recordsVisionCapacityExceededAsRejectedTest() throws Exception {
+        ThreadPoolTaskExecutor runningExecutor = new ThreadPoolTaskExecutor();
+        runningExecutor.initialize();
+        ImageObjectionDetectionService imageObjectionDetectionService = mock(ImageObjectionDetectionService.class);
+        when(imageObjectionDetectionService.reuseDetectedImageObjects(anyString(), anyString()))
+                .thenReturn(Optional.empty());
+        when(imageObjectionDetectionService.detectImageObjects(anyString(), anyString()))
+                .thenThrow(new VisionCapacityExceededException());
+        imageDetectionJobService.detectionExecutor = runningExecutor;
+        imageDetectionJobService.imageObjectionDetectionService = imageObjectionDetectionService;
+        UUID imageId = UUID.randomUUID();
+        try {
+            imageDetectionJobService.submit(imageId, "hash");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (imageDetectionJobService.getJob(imageId).get().getStatus() == DetectionStatus.PENDING
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(DetectionStatus.REJECTED, imageDetectionJobService.getJob(imageId).get().getStatus());
+        } finally {
+            runningExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void rejected_isBoundedTest() {
+        for (int i = 0; i < 100; i++) {
+            imageDetectionJobService.rejected(UUID.randomUUID(), "at capacity");
+        }
+        imageDetectionJobService.failedJobs.cleanUp();
+
+        assertEquals(2, imageDetectionJobService.failedJobs.estimatedSize());
+        assertFalse(imageDetectionJobService.getJob(UUID.randomUUID()).isPresent());
+    }
+}
@@ -0,0 +1,140 @@
+package com.johnhollandheb.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.johnhollandheb.api.service.exception.TooManySubscribersException;
+import com.johnhollandheb.core.domain.ImageChangeChannel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageEventServiceTest {
+    private final CountDownLatch writesBlocked = new CountDownLatch(1);
+    private final CountDownLatch stalledWriteReleased = new CountDownLatch(1);
+    private volatile boolean stallWrites;
+    private ThreadPoolTaskExecutor eventExecutor;
+    private ImageEventService imageEventService;
+
+    @BeforeEach
+    void initEach() {
+        eventExecutor = new ThreadPoolTaskExecutor();
+        eventExecutor.setCorePoolSize(1);
+        eventExecutor.setMaxPoolSize(1);
+        eventExecutor.initialize();
+        // holds up every write, like a client that stopped reading
+        eventExecutor.execute(() -> {
+            try {
+                writesBlocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        imageEventService = new ImageEventService() {
+            @Override
+            SseEmitter newEmitter() {
+                return new StallingEmitter();
+            }
+        };
+        imageEventService.imageChangeChannel = new ImageChangeChannel();
+        imageEventService.eventExecutor = eventExecutor;
+        imageEventService.objectMapper = new ObjectMapper();
+        imageEventService.meterRegistry = new SimpleMeterRegistry();
+        imageEventService.maxSubscribers = 2;
+        imageEventService.bufferSize = 2;
+        imageEventService.heartbeatMillis = 60000;
+        imageEventService.timeoutMillis = 60000;
+        imageEventService.writeTimeoutMillis = 50;
+        imageEventService.maxStalledWrites = 1;
+        imageEventService.init();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        writesBlocked.countDown();
+        stalledWriteReleased.countDown();
+        imageEventService.stop();
+        eventExecutor.shutdown();
+    }
+
+    @Test
+    void subscribeFiltersByImageIdTest() {
+        UUID imageId = UUID.randomUUID();
+
+        imageEventService.subscribe(Set.of(imageId));
+
+        assertTrue(imageEventService.hasSubscribers(imageId));
+        assertFalse(imageEventService.hasSubscribers(UUID.randomUUID()));
+        imageEventService.subscribe(Collections.emptySet());
+        assertTrue(imageEventService.hasSubscribers(UUID.randomUUID()));
+        assertThrows(TooManySubscribersException.class, () -> imageEventService.subscribe(Collections.emptySet()));
+    }
+
+    @Test
+    void slowSubscriberIsEvictedTest() {
+        UUID imageId = UUID.randomUUID();
+        imageEventService.subscribe(Set.of(imageId));
+
+        // the first event fills the buffer behind the initial heartbeat, the second one overflows it
+        imageEventService.imageObjectsDetected(imageId, List.of("Dog"));
+        assertEquals(1, imageEventService.getSubscriberCount());
+        imageEventService.imageObjectsDetected(imageId, List.of("Cat"));
+
+        assertEquals(0, imageEventService.getSubscriberCount());
+        assertFalse(imageEventService.hasSubscribers(imageId));
+    }
+
+    @Test
+    void stalledWriteIsEvictedAndReplacedTest() throws Exception {
+        stallWrites = true;
+        imageEventService.subscribe(Collections.emptySet());
+        writesBlocked.countDown();
+
+        // the initial heartbeat's write stalls until the deadline evicts the subscriber
+        for (int i = 0; i < 100 && imageEventService.getSubscriberCount() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, imageEventService.getSubscriberCount());
+        assertEquals(2, eventExecutor.getCorePoolSize());
+
+        stalledWriteReleased.countDown();
+        for (int i = 0; i < 100 && eventExecutor.getCorePoolSize() > 1; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, eventExecutor.getCorePoolSize());
+    }
+
+    // a client that stops reading: writes block while stallWrites is set
+    private class StallingEmitter extends SseEmitter {
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            // like a write waiting on the socket, it isn't ended by the interrupt
+            boolean interrupted = false;
+            while (stallWrites && stalledWriteReleased.getCount() > 0) {
+                try {
+                    stalledWriteReleased.await();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            super.send(builder);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.johnhollandheb.api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.johnhollandheb.JohnhollandhebApplication;
+import com.johnhollandheb.api.object.ImageImportResult;
+import com.johnhollandheb.api.object.ImageImportStatus;
+import com.johnhollandheb.api.object.ImageUploadRequest;
+import com.johnhollandheb.core.domain.ImageObjectMapRepository;
+import com.johnhollandheb.core.domain.ImageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@SpringBootTest(classes= JohnhollandhebApplication.class, properties = "images.import.chunk-size=2")
+public class ImageImportServiceTest {
+
+    @Autowired
+    ImageRepository imageRepository;
+
+    @Autowired
+    ImageObjectMapRepository imageObjectMapRepository;
+
+    @MockBean
+    ImageAnnotatorClient imageAnnotatorClient;
+
+    @Autowired
+    ImageImportService imageImportService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @BeforeEach
+    void initEach() {
+        this.imageRepository.deleteAll();
+        this.imageObjectMapRepository.deleteAll();
+    }
+
+    @Test
+    void importNdjson_withInvalidItem_Test() throws Exception {
+        String ndjson = toJson(uploadRequest("image1.png")) + "\n"
+                + "{not json\n"
+                + "\n"
+                + toJson(uploadRequest("image2.png")) + "\n";
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+
+        imageImportService.importNdjson(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), "test", results);
+
+        List<ImageImportResult> importResults = readResults(results);
+        assertEquals(3, importResults.size());
+        assertEquals(ImageImportStatus.IMPORTED, importResults.get(0).getStatus());
+        assertEquals("image1.png", importResults.get(0).getFileName());
+        assertNotNull(importResults.get(0).getImage().getImageId());
+        assertEquals(ImageImportStatus.FAILED, importResults.get(1).getStatus());
+        assertEquals(1, importResults.get(1).getIndex());
+        assertEquals(ImageImportStatus.IMPORTED, importResults.get(2).getStatus());
+        assertEquals(2, imageRepository.count());
+    }
+
+    @Test
+    void importZip_Test() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(zip)) {
+            for (int i = 0; i < 3; i++) {
+                zipOutputStream.putNextEntry(new ZipEntry("images/image" + i + ".png"));
+                zipOutputStream.write(new byte[] {1, 2, (byte) i});
+                zipOutputStream.closeEntry();
+            }
+        }
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+
+        imageImportService.importZip(new ByteArrayInputStream(zip.toByteArray()), false, results);
+
+        List<ImageImportResult> importResults = readResults(results);
+        assertEquals(3, importResults.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, importResults.get(i).getIndex());
+            assertEquals("image" + i + ".png", importResults.get(i).getFileName());
+            assertEquals(ImageImportStatus.IMPORTED, importResults.get(i).getStatus());
+        }
+        assertEquals(3, imageRepository.count());
+    }
+
+    private ImageUploadRequest uploadRequest(String fileName) {
+        return ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(false)
+                .fileName(fileName)
+                .base64ImageData("data:image/png;base64," + Base64.getEncoder().encodeToString(fileName.getBytes()))
+                .build();
+    }
+
+    private String toJson(ImageUploadRequest uploadRequest) throws Exception {
+        return objectMapper.writeValueAsString(uploadRequest);
+    }
+
+    private List<ImageImportResult> readResults(ByteArrayOutputStream results) throws Exception {
+        List<ImageImportResult> importResults = new ArrayList<>();
+        for (String line : results.toString(StandardCharsets.UTF_8).split("\n")) {
+            importResults.add(objectMapper.readValue(line, ImageImportResult.class));
+        }
+        return importResults;
+    }
+}
@@ -1,13 +1,31 @@
 package com.johnhollandheb.api.service;
 
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
 import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.google.cloud.vision.v1.LocalizedObjectAnnotation;
 import com.johnhollandheb.JohnhollandhebApplication;
 import com.johnhollandheb.api.object.Image;
+import com.johnhollandheb.api.object.ImagePage;
+import com.johnhollandheb.api.object.ImageUploadRequest;
+import com.johnhollandheb.api.object.ResourceVersion;
 import com.johnhollandheb.api.service.exception.ImageNotFoundException;
+import com.johnhollandheb.api.service.exception.InvalidImageQueryException;
+import com.johnhollandheb.api.service.exception.ThumbnailUnavailableException;
+import com.johnhollandheb.core.domain.DetectedImageObject;
+import com.johnhollandheb.core.domain.DetectedImageObjectWriter;
 import com.johnhollandheb.core.domain.ImageEntity;
 import com.johnhollandheb.core.domain.ImageObjectMapEntity;
 import com.johnhollandheb.core.domain.ImageObjectMapRepository;
 import com.johnhollandheb.core.domain.ImageRepository;
+import com.johnhollandheb.core.domain.ObjectNameDictionary;
+import com.johnhollandheb.core.index.ObjectMatchMode;
+import com.johnhollandheb.core.index.ObjectNameIndex;
+import com.johnhollandheb.core.rendition.ImageScaler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
@@ -17,18 +35,38 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.imageio.ImageIO;
+import javax.persistence.EntityManagerFactory;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
-@SpringBootTest(classes= JohnhollandhebApplication.class)
+@SpringBootTest(classes= JohnhollandhebApplication.class,
+        properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class ImageServiceTest {
 
     @Autowired
@@ -40,9 +78,27 @@ public class ImageServiceTest {
     @Autowired
     ImageObjectMapRepository imageObjectMapRepository;
 
+    @Autowired
+    ObjectNameDictionary objectNameDictionary;
+
+    @Autowired
+    DetectedImageObjectWriter detectedImageObjectWriter;
+
     @Autowired
     ImageService imageService;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    ObjectNameIndex objectNameIndex;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    DetectionResultCache detectionResultCache;
+
     @BeforeEach
     void initEach() {
         this.imageRepository.deleteAll();
@@ -83,7 +139,7 @@ public class ImageServiceTest {
         ImageEntity imageEntity = ImageEntity.builder()
                 .id(imageId)
                 .fileName("image.jpg")
-                .base64imageData("FakeDataString")
+                .contentHash("FakeContentHash")
                 .imageType("image/jpg")
                 .label("Image label")
                 .imageUrl("https://google.com/image.jpg")
@@ -93,12 +149,12 @@ public class ImageServiceTest {
 
         ImageObjectMapEntity objectMapEntity1 = ImageObjectMapEntity.builder()
                 .imageId(imageId)
-                .objectName("Basketball")
+                .objectId(getObjectId("Basketball"))
                 .build();
 
         ImageObjectMapEntity objectMapEntity2 = ImageObjectMapEntity.builder()
                 .imageId(imageId)
-                .objectName("Football")
+                .objectId(getObjectId("Football"))
                 .build();
         imageObjectMapRepository.save(objectMapEntity1);
         imageObjectMapRepository.save(objectMapEntity2);
@@ -122,7 +178,7 @@ public class ImageServiceTest {
         ImageEntity imageEntity = ImageEntity.builder()
                 .id(imageId)
                 .fileName("image.jpg")
-                .base64imageData("FakeDataString")
+                .contentHash("FakeContentHash")
                 .imageType("image/jpg")
                 .label("Image label")
                 .imageUrl("https://google.com/image.jpg")
@@ -132,7 +188,7 @@ public class ImageServiceTest {
         ImageEntity imageEntity2 = ImageEntity.builder()
                 .id(imageId2)
                 .fileName("image2.jpg")
-                .base64imageData("FakeDataString")
+                .contentHash("FakeContentHash")
                 .imageType("image/jpg")
                 .label("Image 2 label")
                 .imageUrl("https://google.com/image2.jpg")
@@ -142,7 +198,7 @@ public class ImageServiceTest {
         ImageEntity imageEntity3 = ImageEntity.builder()
                 .id(imageId3)
                 .fileName("image3.jpg")
-                .base64imageData("FakeDataString")
+                .contentHash("FakeContentHash")
                 .imageType("image/jpg")
                 .label("Image 3 label")
                 .imageUrl("https://google.com/image3.jpg")
@@ -152,12 +208,12 @@ public class ImageServiceTest {
 
         ImageObjectMapEntity objectMapEntity1 = ImageObjectMapEntity.builder()
                 .imageId(imageId)
-                .objectName("Basketball")
+                .objectId(getObjectId("Basketball"))
                 .build();
 
         ImageObjectMapEntity objectMapEntity2 = ImageObjectMapEntity.builder()
                 .imageId(imageId2)
-                .objectName("Football")
+                .objectId(getObjectId("Football"))
                 .build();
         imageObjectMapRepository.save(objectMapEntity1);
         imageObjectMapRepository.save(objectMapEntity2);
@@ -173,11 +229,403 @@ public class ImageServiceTest {
         assertTrue(image2.getObjects().contains("Football"));
     }
 
-    // TODO: getImagesByObjectList, and saveImage tests
-    // in other words - test all public methods in the service that interact with the REST resource
+    @Test
+    void getImages_pagesWithCursor_Test() {
+        for (int i = 0; i < 5; i++) {
+            imageRepository.save(ImageEntity.builder()
+                    .id(UUID.randomUUID())
+                    .fileName("image" + i + ".jpg")
+                    .contentHash("FakeContentHash")
+                    .imageType("image/jpg")
+                    .label("Image " + i + " label")
+                    .objectsDetected(false)
+                    .build());
+        }
+
+        ImagePage firstPage = imageService.getImages(null, 2);
+        ImagePage secondPage = imageService.getImages(firstPage.getNextCursor(), 2);
+        ImagePage lastPage = imageService.getImages(secondPage.getNextCursor(), 2);
+
+        assertEquals(2, firstPage.getImages().size());
+        assertEquals(2, secondPage.getImages().size());
+        assertEquals(1, lastPage.getImages().size());
+        assertNull(lastPage.getNextCursor());
+
+        Set<String> pagedImageIds = Stream.of(firstPage, secondPage, lastPage)
+                .flatMap(page -> page.getImages().stream())
+                .map(Image::getImageId)
+                .collect(Collectors.toSet());
+        assertEquals(5, pagedImageIds.size());
+    }
+
+    @Test
+    void getAllImages_issuesConstantNumberOfStatements_Test() {
+        for (int i = 0; i < 20; i++) {
+            UUID imageId = UUID.randomUUID();
+            imageRepository.save(ImageEntity.builder()
+                    .id(imageId)
+                    .fileName("image" + i + ".jpg")
+                    .contentHash("FakeContentHash")
+                    .imageType("image/jpg")
+                    .label("Image " + i + " label")
+                    .objectsDetected(true)
+                    .build());
+            imageObjectMapRepository.save(ImageObjectMapEntity.builder()
+                    .imageId(imageId)
+                    .objectId(getObjectId("Dog"))
+                    .build());
+        }
+        objectNameIndex.rebuild();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        List<Image> allImages = imageService.getAllImages();
+        long getAllImagesStatementCount = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        List<Image> dogImages = imageService.getImagesByObjectList(Collections.singletonList("dog"));
+        long getImagesByObjectListStatementCount = statistics.getPrepareStatementCount();
+
+        // one query for the images and one for all of their object names, which are then cached
+        assertEquals(20, allImages.size());
+        assertEquals(2, getAllImagesStatementCount);
+        assertEquals(20, dogImages.size());
+        assertEquals(1, getImagesByObjectListStatementCount);
+        assertTrue(dogImages.stream().allMatch(image -> image.getObjects().contains("Dog")));
+    }
+
+    @Test
+    void saveImage_detectsObjectsWithAnnotatorClient_Test() {
+        when(imageAnnotatorClient.batchAnnotateImages(anyList())).thenReturn(BatchAnnotateImagesResponse.newBuilder()
+                .addResponses(AnnotateImageResponse.newBuilder()
+                        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName("Dog"))
+                        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName("Cat"))
+                        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName("Dog")))
+                .build());
+        ImageUploadRequest uploadRequest = ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(true)
+                .fileName("image.png")
+                .base64ImageData("data:image/png;base64," + Base64.getEncoder().encodeToString(new byte[] {1, 2, 3}))
+                .build();
+
+        Image savedImage = imageService.saveImage(uploadRequest, "test");
+
+        assertTrue(savedImage.isObjectsDetected());
+        assertEquals(Arrays.asList("Cat", "Dog"), savedImage.getObjects());
+        assertEquals(Arrays.asList("Cat", "Dog"), imageService.getImage(savedImage.getImageId()).getObjects().stream()
+                .sorted()
+                .collect(Collectors.toList()));
+        verify(imageAnnotatorClient).batchAnnotateImages(anyList());
+    }
+
+    @Test
+    void saveImage_reusesObjectsDetectedForIdenticalContent_Test() {
+        whenAnnotatedReturnDog();
+        byte[] content = UUID.randomUUID().toString().getBytes();
+
+        Image first = imageService.saveImage(detectingUploadRequest(content), "test");
+        Image second = imageService.saveImage(detectingUploadRequest(content), "test");
+
+        assertNotEquals(first.getImageId(), second.getImageId());
+        assertEquals(List.of("Dog"), second.getObjects());
+        verify(imageAnnotatorClient, times(1)).batchAnnotateImages(anyList());
+    }
+
+    @Test
+    void saveImage_reusesObjectsDetectedBeforeTheCacheWasEmptied_Test() {
+        whenAnnotatedReturnDog();
+        byte[] content = UUID.randomUUID().toString().getBytes();
+        imageService.saveImage(detectingUploadRequest(content), "test");
+        // like a restart, or an upload to another node: only the image table knows the content was detected
+        detectionResultCache.clear();
+
+        Image second = imageService.saveImage(detectingUploadRequest(content), "test");
+
+        assertTrue(second.isObjectsDetected());
+        assertEquals(List.of("Dog"), second.getObjects());
+        assertEquals(List.of("Dog"), imageService.getImage(second.getImageId()).getObjects());
+        verify(imageAnnotatorClient, times(1)).batchAnnotateImages(anyList());
+    }
+
+    @Test
+    void saveImage_recordsStageMetrics_Test() {
+        when(imageAnnotatorClient.batchAnnotateImages(anyList())).thenReturn(BatchAnnotateImagesResponse.newBuilder()
+                .addResponses(AnnotateImageResponse.newBuilder()
+                        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName("Dog")))
+                .build());
+        // unique content, so detection isn't reused from another test
+        ImageUploadRequest uploadRequest = ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(true)
+                .fileName("image.png")
+                .base64ImageData("data:image/png;base64," + Base64.getEncoder()
+                        .encodeToString(UUID.randomUUID().toString().getBytes()))
+                .build();
+        long storeCount = stageCount(ImageMetrics.UPLOAD_STAGE_TIMER, ImageMetrics.UPLOAD_STAGE_STORE);
+        long persistCount = stageCount(ImageMetrics.UPLOAD_STAGE_TIMER, ImageMetrics.UPLOAD_STAGE_PERSIST);
+        long detectCount = stageCount(ImageMetrics.UPLOAD_STAGE_TIMER, ImageMetrics.UPLOAD_STAGE_DETECT);
+        long saveCount = stageCount(ImageMetrics.DETECTION_STAGE_TIMER, ImageMetrics.DETECTION_STAGE_SAVE);
+
+        imageService.saveImage(uploadRequest, "test");
+
+        assertEquals(storeCount + 1, stageCount(ImageMetrics.UPLOAD_STAGE_TIMER, ImageMetrics.UPLOAD_STAGE_STORE));
+        assertEquals(persistCount + 1,
+                stageCount(ImageMetrics.UPLOAD_STAGE_TIMER, ImageMetrics.UPLOAD_STAGE_PERSIST));
+        assertEquals(detectCount + 1, stageCount(ImageMetrics.UPLOAD_STAGE_TIMER, ImageMetrics.UPLOAD_STAGE_DETECT));
+        assertEquals(saveCount + 1, stageCount(ImageMetrics.DETECTION_STAGE_TIMER, ImageMetrics.DETECTION_STAGE_SAVE));
+        assertEquals(0, meterRegistry.get(ImageMetrics.DETECTIONS_IN_FLIGHT_GAUGE).gauge().value());
+    }
+
+    @Test
+    void getImageVersion_changesWhenObjectsAreDetected_Test() {
+        when(imageAnnotatorClient.batchAnnotateImages(anyList())).thenReturn(BatchAnnotateImagesResponse.newBuilder()
+                .addResponses(AnnotateImageResponse.newBuilder()
+                        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName("Dog")))
+                .build());
+        ImageUploadRequest uploadRequest = ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(false)
+                .fileName("image.png")
+                .base64ImageData("data:image/png;base64," + Base64.getEncoder()
+                        .encodeToString(UUID.randomUUID().toString().getBytes()))
+                .build();
+        ResourceVersion emptyListingVersion = imageService.getImageListingVersion();
+
+        Image savedImage = imageService.saveImage(uploadRequest, "test");
+        ResourceVersion savedVersion = imageService.getImageVersion(savedImage.getImageId());
+        ResourceVersion savedListingVersion = imageService.getImageListingVersion();
+        imageService.requestDetection(savedImage.getImageId());
+        awaitObjectsDetected(savedImage.getImageId());
+        ResourceVersion detectedVersion = imageService.getImageVersion(savedImage.getImageId());
+
+        assertNotNull(savedVersion.getLastModified());
+        assertEquals(savedVersion, imageService.getImageVersion(savedImage.getImageId()));
+        assertNotEquals(emptyListingVersion.getEtag(), savedListingVersion.getEtag());
+        assertNotEquals(savedVersion.getEtag(), detectedVersion.getEtag());
+        assertNotEquals(savedListingVersion.getEtag(), imageService.getImageListingVersion().getEtag());
+    }
+
+    @Test
+    void getImage_isCachedUntilObjectsAreDetected_Test() {
+        when(imageAnnotatorClient.batchAnnotateImages(anyList())).thenReturn(BatchAnnotateImagesResponse.newBuilder()
+                .addResponses(AnnotateImageResponse.newBuilder()
+                        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName("Dog")))
+                .build());
+        ImageUploadRequest uploadRequest = ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(false)
+                .fileName("image.png")
+                .base64ImageData("data:image/png;base64," + Base64.getEncoder()
+                        .encodeToString(UUID.randomUUID().toString().getBytes()))
+                .build();
+        Image savedImage = imageService.saveImage(uploadRequest, "test");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        imageService.getImage(savedImage.getImageId());
+        statistics.clear();
+        Image cachedImage = imageService.getImage(savedImage.getImageId());
+        long cachedStatementCount = statistics.getPrepareStatementCount();
+        cachedImage.setLabel("modified by the caller");
+        imageService.requestDetection(savedImage.getImageId());
+        awaitObjectsDetected(savedImage.getImageId());
+
+        assertEquals(0, cachedStatementCount);
+        assertEquals(savedImage.getLabel(), imageService.getImage(savedImage.getImageId()).getLabel());
+        assertEquals(List.of("Dog"), imageService.getImage(savedImage.getImageId()).getObjects());
+    }
 
     @Test
     void getImagesByObjectList_Test() {
+        UUID dogAndCatImageId = saveDetectedImage("Dog", "Cat");
+        UUID dogImageId = saveDetectedImage("Dog");
+        UUID birdImageId = saveDetectedImage("Bird");
+        objectNameIndex.rebuild();
+
+        List<String> anyImageIds = getImageIds(imageService.getImagesByObjectList(
+                Arrays.asList("dog", "bird"), ObjectMatchMode.ANY, Collections.emptyList(), null, null));
+        List<String> allImageIds = getImageIds(imageService.getImagesByObjectList(
+                Arrays.asList("dog", "cat"), ObjectMatchMode.ALL, Collections.emptyList(), null, null));
+        List<String> excludedImageIds = getImageIds(imageService.getImagesByObjectList(
+                Collections.singletonList("dog"), ObjectMatchMode.ANY, Collections.singletonList("cat"), null, null));
+        List<String> unknownImageIds = getImageIds(imageService.getImagesByObjectList(
+                Arrays.asList("dog", "unicorn"), ObjectMatchMode.ALL, Collections.emptyList(), null, null));
+
+        assertEquals(3, anyImageIds.size());
+        assertTrue(anyImageIds.containsAll(Arrays.asList(
+                dogAndCatImageId.toString(), dogImageId.toString(), birdImageId.toString())));
+        assertEquals(Collections.singletonList(dogAndCatImageId.toString()), allImageIds);
+        assertEquals(Collections.singletonList(dogImageId.toString()), excludedImageIds);
+        assertTrue(unknownImageIds.isEmpty());
+    }
+
+    @Test
+    void getTopImagesByObjectList_Test() {
+        UUID bestDogImageId = saveScoredImage("Dog", 0.9f, 0.5f);
+        UUID smallDogImageId = saveScoredImage("Dog", 0.95f, 0.2f);
+        UUID catImageId = saveScoredImage("Cat", 0.8f, 0.5f);
+        saveScoredImage("Dog", 0.4f, 0.5f);
+        // detected before scores were kept
+        saveDetectedImage("Dog");
+
+        ImagePage topImages = imageService.getTopImagesByObjectList(Arrays.asList("dog", "cat"), 0.5f, 0.1f, 10);
+        List<String> largeDogImageIds = getImageIds(imageService.getTopImagesByObjectList(
+                Collections.singletonList("dog"), 0.5f, 0.25f, 10));
+        List<String> firstImageIds = getImageIds(imageService.getTopImagesByObjectList(
+                Arrays.asList("dog", "cat"), null, null, 1));
+
+        assertEquals(Arrays.asList(smallDogImageId.toString(), bestDogImageId.toString(), catImageId.toString()),
+                getImageIds(topImages));
+        assertEquals(0.95f, topImages.getImages().get(0).getScore());
+        assertEquals(Collections.singletonList("Dog"), topImages.getImages().get(0).getObjects());
+        assertEquals(Collections.singletonList(bestDogImageId.toString()), largeDogImageIds);
+        assertEquals(Collections.singletonList(smallDogImageId.toString()), firstImageIds);
+        assertThrows(InvalidImageQueryException.class, () -> imageService.getTopImagesByObjectList(
+                Collections.singletonList("dog"), 1.5f, null, 10));
+    }
+
+    @Test
+    void getThumbnailContent_withUnsupportedFormat_Test() {
+        Image savedImage = imageService.saveImage(pngUploadRequest(new byte[] {1, 2, 3}), "test");
+
+        // the second request fails from the remembered decoding failure
+        assertThrows(ThumbnailUnavailableException.class,
+                () -> imageService.getThumbnailContent(savedImage.getImageId(), 128));
+        assertThrows(ThumbnailUnavailableException.class,
+                () -> imageService.getThumbnailContent(savedImage.getImageId(), 512));
+    }
+
+    @Test
+    void getSimilarImages_Test() throws Exception {
+        byte[] png = toPng(drawGradient(false));
+        Image image = imageService.saveImage(pngUploadRequest(png), "test");
+        Image resizedCopy = imageService.saveImage(
+                pngUploadRequest(ImageScaler.scaleToJpeg(new ByteArrayInputStream(png), 400, 0.8f)), "test");
+        Image identicalCopy = imageService.saveImage(pngUploadRequest(png), "test");
+        imageService.saveImage(pngUploadRequest(toPng(drawGradient(true))), "test");
+        // saved before perceptual hashes were kept, so it's hashed on its first query
+        UUID unhashedImageId = UUID.randomUUID();
+        imageRepository.save(ImageEntity.builder()
+                .id(unhashedImageId)
+                .fileName("image.png")
+                .contentHash(imageRepository.findById(UUID.fromString(image.getImageId())).get().getContentHash())
+                .imageType("image/png")
+                .label("Image label")
+                .build());
+
+        List<Image> similarImages = imageService.getSimilarImages(image.getImageId(), null, null);
+        List<Image> unhashedSimilarImages = imageService.getSimilarImages(unhashedImageId.toString(), 0, null);
+
+        assertEquals(Set.of(resizedCopy.getImageId(), identicalCopy.getImageId()), similarImages.stream()
+                .map(Image::getImageId)
+                .collect(Collectors.toSet()));
+        assertTrue(similarImages.stream().allMatch(similarImage -> similarImage.getDistance() <= 4));
+        assertEquals(3, unhashedSimilarImages.size());
+        assertNotNull(imageRepository.findById(unhashedImageId).get().getPerceptualHash());
+        assertThrows(InvalidImageQueryException.class,
+                () -> imageService.getSimilarImages(image.getImageId(), 64, null));
+    }
+
+    // a square box with the given area, centred in the image
+    private UUID saveScoredImage(String objectName, float score, float boxArea) {
+        UUID imageId = saveDetectedImage();
+        float side = (float) Math.sqrt(boxArea);
+        detectedImageObjectWriter.saveDetectedObjects(imageId, Collections.singletonList(DetectedImageObject.builder()
+                .name(objectName)
+                .score(score)
+                .boxLeft((1 - side) / 2)
+                .boxTop((1 - side) / 2)
+                .boxRight((1 + side) / 2)
+                .boxBottom((1 + side) / 2)
+                .build()));
+        return imageId;
+    }
+
+    private UUID saveDetectedImage(String... objectNames) {
+        UUID imageId = UUID.randomUUID();
+        imageRepository.save(ImageEntity.builder()
+                .id(imageId)
+                .fileName("image.jpg")
+                .contentHash("FakeContentHash")
+                .imageType("image/jpg")
+                .label("Image label")
+                .objectsDetected(true)
+                .build());
+        for (String objectName : objectNames) {
+            imageObjectMapRepository.save(ImageObjectMapEntity.builder()
+                    .imageId(imageId)
+                    .objectId(getObjectId(objectName))
+                    .build());
+        }
+        return imageId;
+    }
+
+    private void whenAnnotatedReturnDog() {
+        when(imageAnnotatorClient.batchAnnotateImages(anyList())).thenReturn(BatchAnnotateImagesResponse.newBuilder()
+                .addResponses(AnnotateImageResponse.newBuilder()
+                        .addLocalizedObjectAnnotations(LocalizedObjectAnnotation.newBuilder().setName("Dog")))
+                .build());
+    }
+
+    private ImageUploadRequest detectingUploadRequest(byte[] content) {
+        return ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(true)
+                .fileName("image.png")
+                .base64ImageData("data:image/png;base64," + Base64.getEncoder().encodeToString(content))
+                .build();
+    }
+
+    private ImageUploadRequest pngUploadRequest(byte[] content) {
+        return ImageUploadRequest.builder()
+                .isLink(false)
+                .detectObjects(false)
+                .fileName("image.png")
+                .base64ImageData("data:image/png;base64," + Base64.getEncoder().encodeToString(content))
+                .build();
+    }
+
+    // a horizontal grayscale gradient, its perceptual hash is all zeros (or all ones when reversed)
+    private BufferedImage drawGradient(boolean reversed) {
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(reversed
+                ? new GradientPaint(0, 0, Color.WHITE, 640, 0, Color.BLACK)
+                : new GradientPaint(0, 0, Color.BLACK, 640, 0, Color.WHITE));
+        graphics.fillRect(0, 0, 640, 480);
+        graphics.dispose();
+        return image;
+    }
+
+    private byte[] toPng(BufferedImage image) throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    private List<String> getImageIds(ImagePage imagePage) {
+        return imagePage.getImages().stream()
+                .map(Image::getImageId)
+                .collect(Collectors.toList());
+    }
+
+    private long stageCount(String timerName, String stage) {
+        Timer timer = meterRegistry.find(timerName).tag("stage", stage).timer();
+        return (timer == null) ? 0 : timer.count();
+    }
+
+    private void awaitObjectsDetected(String imageId) {
+        for (int i = 0; i < 100 && !imageService.getImage(imageId).isObjectsDetected(); i++) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
+    private Integer getObjectId(String objectName) {
+        return objectNameDictionary.getIds(List.of(objectName)).get(objectName);
     }
 }
@@ -0,0 +1,57 @@
+package com.johnhollandheb.core.content;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileSystemImageContentStoreTest {
+
+    @TempDir
+    Path contentRoot;
+
+    @Test
+    void saveAndTransferTest() throws Exception {
+        FileSystemImageContentStore contentStore = new FileSystemImageContentStore(contentRoot.toString(), null);
+        byte[] content = "not really an image".getBytes(StandardCharsets.UTF_8);
+
+        StoredContent storedContent = contentStore.save(new ByteArrayInputStream(content));
+        String contentHash = storedContent.getContentHash();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        contentStore.transferTo(contentHash, outputStream);
+
+        assertEquals(ContentHash.sha256Hex(content), contentHash);
+        assertEquals(content.length, storedContent.getContentLength());
+        assertTrue(Files.exists(contentStore.getPath(contentHash)));
+        assertArrayEquals(content, outputStream.toByteArray());
+    }
+
+    @Test
+    void saveDuplicateContentTest() throws Exception {
+        FileSystemImageContentStore contentStore = new FileSystemImageContentStore(contentRoot.toString(), null);
+        byte[] content = "not really an image".getBytes(StandardCharsets.UTF_8);
+
+        String contentHash = contentStore.save(new ByteArrayInputStream(content)).getContentHash();
+        String duplicateContentHash = contentStore.save(new ByteArrayInputStream(content)).getContentHash();
+
+        assertEquals(contentHash, duplicateContentHash);
+        assertEquals(1, Files.list(contentStore.getPath(contentHash).getParent()).count());
+    }
+
+    @Test
+    void transferMissingContentTest() {
+        FileSystemImageContentStore contentStore = new FileSystemImageContentStore(contentRoot.toString(), null);
+
+        assertThrows(ImageContentNotFoundException.class,
+                () -> contentStore.transferTo(ContentHash.sha256Hex(new byte[0]), new ByteArrayOutputStream()));
+    }
+}
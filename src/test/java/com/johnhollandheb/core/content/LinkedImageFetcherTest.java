@@ -0,0 +1,120 @@
+package com.johnhollandheb.core.content;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LinkedImageFetcherTest {
+    private static final byte[] IMAGE = "not really an image".getBytes(StandardCharsets.UTF_8);
+    private static final String ETAG = "\"v1\"";
+
+    @TempDir
+    Path contentRoot;
+
+    private HttpServer server;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/image.png", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fullResponses.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.sendResponseHeaders(200, IMAGE.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(IMAGE);
+                }
+            }
+            exchange.close();
+        });
+        server.createContext("/slow.png", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.createContext("/missing.png", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        // the slow handler must not hold up the other requests
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void fetchAndRevalidateTest() throws Exception {
+        LinkedImageFetcher fetcher = newFetcher(1024, 1000);
+
+        StoredContent storedContent = fetcher.fetch(getUrl("/image.png"), null);
+        StoredContent revalidatedContent = fetcher.fetch(getUrl("/image.png"), null);
+
+        assertEquals(ContentHash.sha256Hex(IMAGE), storedContent.getContentHash());
+        assertEquals(IMAGE.length, storedContent.getContentLength());
+        assertEquals(storedContent, revalidatedContent);
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModifiedResponses.get());
+    }
+
+    @Test
+    void fetchTooLargeTest() {
+        LinkedImageFetcher fetcher = newFetcher(IMAGE.length - 1, 1000);
+
+        assertThrows(ContentTooLargeException.class, () -> fetcher.fetch(getUrl("/image.png"), null));
+    }
+
+    @Test
+    void fetchTimeoutTest() {
+        LinkedImageFetcher fetcher = newFetcher(1024, 200);
+
+        assertThrows(LinkedImageFetchException.class, () -> fetcher.fetch(getUrl("/slow.png"), null));
+    }
+
+    @Test
+    void fetchErrorStatusTest() {
+        LinkedImageFetcher fetcher = newFetcher(1024, 1000);
+
+        assertThrows(LinkedImageFetchException.class, () -> fetcher.fetch(getUrl("/missing.png"), null));
+    }
+
+    @Test
+    void fetchUnsupportedSchemeTest() {
+        LinkedImageFetcher fetcher = newFetcher(1024, 1000);
+
+        assertThrows(LinkedImageFetchException.class, () -> fetcher.fetch("file:///etc/passwd", null));
+    }
+
+    private LinkedImageFetcher newFetcher(long maxBytes, long readTimeoutMs) {
+        FileSystemImageContentStore contentStore = new FileSystemImageContentStore(contentRoot.toString(), null);
+        return new LinkedImageFetcher(contentStore, 1000, readTimeoutMs, maxBytes, 2, 0, 10);
+    }
+
+    private String getUrl(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+}
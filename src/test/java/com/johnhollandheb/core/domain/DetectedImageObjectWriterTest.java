@@ -0,0 +1,84 @@
+package com.johnhollandheb.core.domain;
+
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.johnhollandheb.JohnhollandhebApplication;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@SpringBootTest(classes= JohnhollandhebApplication.class)
+public class DetectedImageObjectWriterTest {
+
+    @Autowired
+    DetectedImageObjectWriter detectedImageObjectWriter;
+
+    @Autowired
+    ImageRepository imageRepository;
+
+    @Autowired
+    ImageObjectMapRepository imageObjectMapRepository;
+
+    @MockBean
+    ImageAnnotatorClient imageAnnotatorClient;
+
+    @BeforeEach
+    void initEach() {
+        imageRepository.deleteAll();
+        imageObjectMapRepository.deleteAll();
+    }
+
+    @Test
+    void saveDetectedObjectsTest() {
+        UUID imageId = UUID.randomUUID();
+        imageRepository.save(ImageEntity.builder()
+                .id(imageId)
+                .fileName("image.jpg")
+                .label("Image label")
+                .objectsDetected(false)
+                .build());
+
+        detectedImageObjectWriter.saveDetectedObjects(imageId,
+                Arrays.asList(detectedObject("Dog", 0.6f), detectedObject("Cat", 0.7f), detectedObject("dog", 0.8f)));
+        // saving again (e.g. a retried detection) neither fails nor duplicates rows, and replaces the score
+        detectedImageObjectWriter.saveDetectedObjects(imageId, Arrays.asList(detectedObject("Dog", 0.9f)));
+
+        List<String> objectNames = imageObjectMapRepository.findAllByImageId(imageId).stream()
+                .map(ImageObjectName::getObjectName)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("Cat", "Dog"), objectNames);
+        assertTrue(imageRepository.findById(imageId).orElseThrow().getObjectsDetected());
+        DetectedImageObject dog = imageObjectMapRepository.findDetectedObjectsByImageId(imageId).stream()
+                .filter(object -> object.getName().equals("Dog"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(0.9f, dog.getScore());
+        assertEquals(0.5f, dog.getBoxRight());
+    }
+
+    private DetectedImageObject detectedObject(String name, float score) {
+        return DetectedImageObject.builder()
+                .name(name)
+                .score(score)
+                .boxLeft(0.1f)
+                .boxTop(0.2f)
+                .boxRight(0.5f)
+                .boxBottom(0.6f)
+                .build();
+    }
+}
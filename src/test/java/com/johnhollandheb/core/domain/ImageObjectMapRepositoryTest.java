@@ -12,12 +12,12 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @RunWith(SpringRunner.class)
@@ -28,6 +28,9 @@ public class ImageObjectMapRepositoryTest {
     @Autowired
     ImageObjectMapRepository imageObjectMapRepository;
 
+    @Autowired
+    ObjectNameDictionary objectNameDictionary;
+
     @MockBean
     ImageAnnotatorClient imageAnnotatorClient;
 
@@ -41,44 +44,46 @@ public class ImageObjectMapRepositoryTest {
         UUID imageId = UUID.randomUUID();
         ImageObjectMapEntity imageObject = ImageObjectMapEntity.builder()
                 .imageId(imageId)
-                .objectName("Dog")
+                .objectId(getObjectId("Dog"))
                 .build();
         ImageObjectMapEntity imageObject2 = ImageObjectMapEntity.builder()
                 .imageId(imageId)
-                .objectName("Cat")
+                .objectId(getObjectId("Cat"))
                 .build();
         ImageObjectMapEntity differentImageObject = ImageObjectMapEntity.builder()
                 .imageId(UUID.randomUUID())
-                .objectName("Dog")
+                .objectId(getObjectId("Dog"))
                 .build();
 
         imageObjectMapRepository.save(imageObject);
         imageObjectMapRepository.save(imageObject2);
         imageObjectMapRepository.save(differentImageObject);
 
-        List<ImageObjectMapEntity> imageObjectMapEntities = imageObjectMapRepository.findAllByImageId(imageId);
+        List<ImageObjectName> imageObjectNames = imageObjectMapRepository.findAllByImageId(imageId);
 
-        assertTrue(imageObjectMapEntities.containsAll(Arrays.asList(imageObject, imageObject2)));
-        assertFalse(imageObjectMapEntities.contains(differentImageObject));
+        assertEquals(Set.of("Dog", "Cat"), imageObjectNames.stream()
+                .map(ImageObjectName::getObjectName)
+                .collect(Collectors.toSet()));
+        assertTrue(imageObjectNames.stream().allMatch(imageObjectName -> imageId.equals(imageObjectName.getImageId())));
     }
 
     @Test
     void findAllByObjectNameIgnoreCaseTest() {
         ImageObjectMapEntity dog1 = ImageObjectMapEntity.builder()
                 .imageId(UUID.randomUUID())
-                .objectName("Dog")
+                .objectId(getObjectId("Dog"))
                 .build();
         ImageObjectMapEntity cat = ImageObjectMapEntity.builder()
                 .imageId(UUID.randomUUID())
-                .objectName("Cat")
+                .objectId(getObjectId("Cat"))
                 .build();
         ImageObjectMapEntity bird = ImageObjectMapEntity.builder()
                 .imageId(UUID.randomUUID())
-                .objectName("Bird")
+                .objectId(getObjectId("Bird"))
                 .build();
         ImageObjectMapEntity dog2 = ImageObjectMapEntity.builder()
                 .imageId(UUID.randomUUID())
-                .objectName("Dog")
+                .objectId(getObjectId("Dog"))
                 .build();
 
         imageObjectMapRepository.save(dog1);
@@ -87,8 +92,24 @@ public class ImageObjectMapRepositoryTest {
         imageObjectMapRepository.save(dog2);
 
 
-        List<ImageObjectMapEntity> dogImages = imageObjectMapRepository.findAllByObjectNameIgnoreCase("dog");
-        assertEquals(2, dogImages.size());
-        assertTrue(dogImages.containsAll(Arrays.asList(dog1, dog2)));
+        List<ImageObjectName> dogImages = imageObjectMapRepository.findAllByObjectNameIgnoreCase("dog");
+        assertEquals(Set.of(dog1.getImageId(), dog2.getImageId()), dogImages.stream()
+                .map(ImageObjectName::getImageId)
+                .collect(Collectors.toSet()));
+        assertTrue(dogImages.stream().allMatch(imageObjectName -> "Dog".equals(imageObjectName.getObjectName())));
+    }
+
+    @Test
+    void objectNameDictionary_isCaseInsensitiveTest() {
+        String objectName = "Unicorn " + UUID.randomUUID();
+
+        Integer objectId = getObjectId(objectName);
+
+        assertEquals(objectId, getObjectId(objectName.toUpperCase()));
+        assertEquals(objectId, objectNameDictionary.findId(" " + objectName.toLowerCase()).orElseThrow());
+    }
+
+    private Integer getObjectId(String objectName) {
+        return objectNameDictionary.getIds(List.of(objectName)).get(objectName);
     }
 }
@@ -42,7 +42,7 @@ class ImageRepositoryTest {
 				.label("Image label")
 				.objectsDetected(false)
 				.imageType("image/jpeg")
-				.base64imageData("not going to use a real base 64 encoded string for this test")
+				.contentHash("not a real sha-256 content hash")
 				.imageUrl(null)
 				.build();
 
@@ -0,0 +1,78 @@
+package com.johnhollandheb.core.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectNameIndexTest {
+
+    @Test
+    void findImageIds_matchModesTest() {
+        ObjectNameIndex objectNameIndex = new ObjectNameIndex();
+        UUID dogAndCat = UUID.randomUUID();
+        UUID dog = UUID.randomUUID();
+        UUID cat = UUID.randomUUID();
+        objectNameIndex.add(dogAndCat, Arrays.asList("Dog", "Cat"));
+        objectNameIndex.add(dog, Collections.singletonList("Dog"));
+        objectNameIndex.add(cat, Collections.singletonList("cat "));
+
+        List<UUID> any = objectNameIndex.findImageIds(Arrays.asList("DOG", "cat"), ObjectMatchMode.ANY,
+                Collections.emptyList(), null, Integer.MAX_VALUE);
+        List<UUID> all = objectNameIndex.findImageIds(Arrays.asList("dog", "cat"), ObjectMatchMode.ALL,
+                Collections.emptyList(), null, Integer.MAX_VALUE);
+        List<UUID> excluded = objectNameIndex.findImageIds(Collections.singletonList("cat"), ObjectMatchMode.ANY,
+                Collections.singletonList("dog"), null, Integer.MAX_VALUE);
+        List<UUID> unknown = objectNameIndex.findImageIds(Arrays.asList("dog", "unicorn"), ObjectMatchMode.ALL,
+                Collections.emptyList(), null, Integer.MAX_VALUE);
+
+        assertEquals(3, any.size());
+        assertEquals(Collections.singletonList(dogAndCat), all);
+        assertEquals(Collections.singletonList(cat), excluded);
+        assertTrue(unknown.isEmpty());
+    }
+
+    @Test
+    void findImageIds_pagesInPostgresUuidOrderTest() {
+        ObjectNameIndex objectNameIndex = new ObjectNameIndex();
+        List<UUID> imageIds = IntStream.range(0, 25)
+                .mapToObj(i -> UUID.randomUUID())
+                .collect(Collectors.toList());
+        imageIds.forEach(imageId -> objectNameIndex.add(imageId, Collections.singletonList("dog")));
+        imageIds.sort(ObjectNameIndex.POSTGRES_UUID_ORDER);
+
+        List<UUID> firstPage = objectNameIndex.findImageIds(Collections.singletonList("dog"), ObjectMatchMode.ANY,
+                Collections.emptyList(), null, 10);
+        List<UUID> secondPage = objectNameIndex.findImageIds(Collections.singletonList("dog"), ObjectMatchMode.ANY,
+                Collections.emptyList(), firstPage.get(firstPage.size() - 1), 10);
+
+        assertEquals(imageIds.subList(0, 10), firstPage);
+        assertEquals(imageIds.subList(10, 20), secondPage);
+    }
+
+    @Test
+    void countImagesTest() {
+        ObjectNameIndex objectNameIndex = new ObjectNameIndex();
+        objectNameIndex.add(UUID.randomUUID(), Arrays.asList("Dog", "Cat", "Car"));
+        objectNameIndex.add(UUID.randomUUID(), Arrays.asList("dog", "Cat"));
+        UUID dog = UUID.randomUUID();
+        objectNameIndex.add(dog, Collections.singletonList("Dog"));
+        objectNameIndex.add(dog, Collections.singletonList("Dog"));
+
+        List<ObjectNameCount> all = objectNameIndex.countImages(null, Integer.MAX_VALUE);
+        List<ObjectNameCount> top = objectNameIndex.countImages(null, 2);
+        List<ObjectNameCount> prefixed = objectNameIndex.countImages("CA", Integer.MAX_VALUE);
+
+        assertEquals(Arrays.asList(new ObjectNameCount("Dog", 3), new ObjectNameCount("Cat", 2),
+                new ObjectNameCount("Car", 1)), all);
+        assertEquals(all.subList(0, 2), top);
+        assertEquals(Arrays.asList(new ObjectNameCount("Cat", 2), new ObjectNameCount("Car", 1)), prefixed);
+    }
+}
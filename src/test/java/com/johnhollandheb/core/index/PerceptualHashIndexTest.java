@@ -0,0 +1,95 @@
+package com.johnhollandheb.core.index;
+
+import com.johnhollandheb.core.rendition.PerceptualHash;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PerceptualHashIndexTest {
+    private PerceptualHashIndex perceptualHashIndex;
+
+    @BeforeEach
+    void initEach() {
+        perceptualHashIndex = new PerceptualHashIndex();
+        perceptualHashIndex.shardCount = 4;
+        perceptualHashIndex.createShards();
+    }
+
+    @Test
+    void findSimilar_matchesBruteForceTest() {
+        Random random = new Random(7);
+        Map<UUID, Long> hashes = new HashMap<>();
+        long queryHash = random.nextLong();
+        for (int i = 0; i < 2000; i++) {
+            // a quarter of the hashes are near the query hash
+            long hash = (i % 4 == 0) ? flipBits(queryHash, random.nextInt(20), random) : random.nextLong();
+            UUID imageId = UUID.randomUUID();
+            hashes.put(imageId, hash);
+            perceptualHashIndex.add(imageId, hash);
+        }
+
+        for (int maxDistance : new int[] {0, 3, 4, 10, 16}) {
+            List<SimilarImage> expected = hashes.entrySet().stream()
+                    .map(entry -> new SimilarImage(entry.getKey(),
+                            PerceptualHash.distance(queryHash, entry.getValue())))
+                    .filter(similarImage -> similarImage.getDistance() <= maxDistance)
+                    .sorted(Comparator.comparingInt(SimilarImage::getDistance)
+                            .thenComparing(SimilarImage::getImageId, ObjectNameIndex.POSTGRES_UUID_ORDER))
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, perceptualHashIndex.findSimilar(queryHash, maxDistance, null, Integer.MAX_VALUE));
+        }
+        assertEquals(2000, perceptualHashIndex.size());
+    }
+
+    @Test
+    void findSimilar_excludesAndLimitsTest() {
+        UUID self = UUID.randomUUID();
+        UUID same = UUID.randomUUID();
+        UUID near = UUID.randomUUID();
+        UUID far = UUID.randomUUID();
+        perceptualHashIndex.add(self, 0xF0F0L);
+        perceptualHashIndex.add(same, 0xF0F0L);
+        perceptualHashIndex.add(near, 0xF0F1L);
+        perceptualHashIndex.add(far, ~0xF0F0L);
+
+        List<SimilarImage> similar = perceptualHashIndex.findSimilar(0xF0F0L, 10, self, Integer.MAX_VALUE);
+        List<SimilarImage> limited = perceptualHashIndex.findSimilar(0xF0F0L, 10, self, 1);
+
+        assertEquals(List.of(new SimilarImage(same, 0), new SimilarImage(near, 1)), similar);
+        assertEquals(List.of(new SimilarImage(same, 0)), limited);
+    }
+
+    @Test
+    void findSimilar_returnsImageAddedTwiceOnceTest() {
+        UUID imageId = UUID.randomUUID();
+        perceptualHashIndex.add(imageId, 42L);
+        perceptualHashIndex.add(imageId, 42L);
+
+        assertEquals(List.of(new SimilarImage(imageId, 0)),
+                perceptualHashIndex.findSimilar(42L, 0, null, Integer.MAX_VALUE));
+    }
+
+    private long flipBits(long hash, int bits, Random random) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < PerceptualHash.BITS; i++) {
+            positions.add(i);
+        }
+        Collections.shuffle(positions, random);
+        for (int i = 0; i < bits; i++) {
+            hash ^= 1L << positions.get(i);
+        }
+        return hash;
+    }
+}
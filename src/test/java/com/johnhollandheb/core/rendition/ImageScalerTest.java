@@ -0,0 +1,65 @@
+package com.johnhollandheb.core.rendition;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageScalerTest {
+
+    @Test
+    void scaleToJpeg_downscalesToFitTest() throws Exception {
+        byte[] png = toPng(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_ARGB));
+
+        byte[] jpeg = ImageScaler.scaleToJpeg(new ByteArrayInputStream(png), 128, 0.8f);
+
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertEquals(128, thumbnail.getWidth());
+        assertEquals(64, thumbnail.getHeight());
+    }
+
+    @Test
+    void scaleToJpeg_neverUpscalesTest() throws Exception {
+        byte[] png = toPng(new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB));
+
+        byte[] jpeg = ImageScaler.scaleToJpeg(new ByteArrayInputStream(png), 512, 0.8f);
+
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertEquals(100, thumbnail.getWidth());
+        assertEquals(50, thumbnail.getHeight());
+    }
+
+    @Test
+    void downscaleToJpeg_onlyLargerImagesTest() throws Exception {
+        byte[] largePng = toPng(new BufferedImage(3000, 4000, BufferedImage.TYPE_INT_RGB));
+        byte[] smallPng = toPng(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB));
+
+        Optional<byte[]> downscaledLarge = ImageScaler.downscaleToJpeg(new ByteArrayInputStream(largePng), 1024, 0.8f);
+        Optional<byte[]> downscaledSmall = ImageScaler.downscaleToJpeg(new ByteArrayInputStream(smallPng), 1024, 0.8f);
+
+        assertTrue(downscaledLarge.isPresent());
+        BufferedImage downscaledImage = ImageIO.read(new ByteArrayInputStream(downscaledLarge.get()));
+        assertEquals(768, downscaledImage.getWidth());
+        assertEquals(1024, downscaledImage.getHeight());
+        assertTrue(downscaledSmall.isEmpty());
+    }
+
+    @Test
+    void scaleToJpeg_withUnsupportedFormatTest() {
+        assertThrows(UnsupportedImageFormatException.class,
+                () -> ImageScaler.scaleToJpeg(new ByteArrayInputStream(new byte[] {1, 2, 3}), 128, 0.8f));
+    }
+
+    private byte[] toPng(BufferedImage image) throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}
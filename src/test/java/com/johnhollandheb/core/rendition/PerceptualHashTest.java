@@ -0,0 +1,78 @@
+package com.johnhollandheb.core.rendition;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PerceptualHashTest {
+
+    @Test
+    void dHash_nearDuplicatesAreCloseTest() throws Exception {
+        for (long seed = 1; seed <= 10; seed++) {
+            byte[] png = toPng(drawImage(seed));
+
+            long hash = PerceptualHash.dHash(new ByteArrayInputStream(png));
+            long rescaledHash = PerceptualHash.dHash(
+                    new ByteArrayInputStream(ImageScaler.scaleToJpeg(new ByteArrayInputStream(png), 400, 0.8f)));
+            long otherHash = PerceptualHash.dHash(new ByteArrayInputStream(toPng(drawImage(seed + 1000))));
+
+            assertTrue(PerceptualHash.distance(hash, rescaledHash) <= 4);
+            assertTrue(PerceptualHash.distance(hash, otherHash) > 10);
+        }
+    }
+
+    @Test
+    void dHash_isDeterministicTest() throws Exception {
+        byte[] png = toPng(drawImage(42));
+
+        assertEquals(PerceptualHash.dHash(new ByteArrayInputStream(png)),
+                PerceptualHash.dHash(new ByteArrayInputStream(png)));
+    }
+
+    @Test
+    void distance_countsDifferentBitsTest() {
+        assertEquals(0, PerceptualHash.distance(0x5L, 0x5L));
+        assertEquals(2, PerceptualHash.distance(0x5L, 0x0L));
+        assertEquals(64, PerceptualHash.distance(0L, -1L));
+    }
+
+    @Test
+    void dHash_withUnsupportedFormatTest() {
+        assertThrows(UnsupportedImageFormatException.class,
+                () -> PerceptualHash.dHash(new ByteArrayInputStream(new byte[] {1, 2, 3})));
+    }
+
+    // a gradient with a few random ovals on it
+    private BufferedImage drawImage(long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0xFFFFFF)),
+                800, 600, new Color(random.nextInt(0xFFFFFF))));
+        graphics.fillRect(0, 0, 800, 600);
+        for (int i = 0; i < 12; i++) {
+            graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+            graphics.fillOval(random.nextInt(800), random.nextInt(600), 100 + random.nextInt(266),
+                    75 + random.nextInt(200));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private byte[] toPng(BufferedImage image) throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}